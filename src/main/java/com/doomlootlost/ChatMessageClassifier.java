@@ -0,0 +1,138 @@
+package com.doomlootlost;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Matches game messages against rules registered by a literal, found anywhere in the message outside of tags.
+ * Rules are bucketed by the literal's first character, so a message costs one array lookup per character
+ * and a rule only costs anything where that character occurs.
+ */
+class ChatMessageClassifier
+{
+	/**
+	 * Extracts the fields of a message that holds the rule's literal
+	 */
+	@FunctionalInterface
+	interface Rule
+	{
+		/**
+		 * @param message the whole message
+		 * @param from index just after the literal
+		 * @return false if the rest of the message doesn't fit, letting other rules and later occurrences try
+		 */
+		boolean accept(String message, int from);
+	}
+
+	private static final int BUCKETS = 128;
+
+	@SuppressWarnings("unchecked")
+	private final List<Entry>[] buckets = new List[BUCKETS];
+
+	/**
+	 * Run the rule for messages holding the literal, as a regex find would. Tags such as {@code <col=ff0000>} are skipped,
+	 * the literal can't span one
+	 */
+	void register(final String literal, final Rule rule)
+	{
+		if (literal.isEmpty() || literal.charAt(0) >= BUCKETS || literal.charAt(0) == '<')
+		{
+			throw new IllegalArgumentException("Literal must start with an ASCII character other than '<': " + literal);
+		}
+
+		final int bucket = literal.charAt(0);
+		if (buckets[bucket] == null)
+		{
+			buckets[bucket] = new ArrayList<>(2);
+		}
+		buckets[bucket].add(new Entry(literal, rule));
+	}
+
+	/**
+	 * @return true if a rule accepted the message
+	 */
+	boolean classify(final String message)
+	{
+		int i = 0;
+		while (i < message.length())
+		{
+			final char c = message.charAt(i);
+			if (c == '<')
+			{
+				final int close = message.indexOf('>', i);
+				if (close != -1)
+				{
+					i = close + 1;
+					continue;
+				}
+			}
+
+			final List<Entry> bucket = c < BUCKETS ? buckets[c] : null;
+			if (bucket != null && accept(bucket, message, i))
+			{
+				return true;
+			}
+			i++;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if a rule of the bucket whose literal is at the index accepted the message
+	 */
+	private static boolean accept(final List<Entry> bucket, final String message, final int at)
+	{
+		for (int i = 0; i < bucket.size(); i++)
+		{
+			final Entry entry = bucket.get(i);
+			if (message.startsWith(entry.literal, at)
+				&& entry.rule.accept(message, at + entry.literal.length()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parse the unsigned decimal number starting at from
+	 *
+	 * @return the number, or -1 if there are no digits there or it overflows
+	 */
+	static int parseNumber(final String message, final int from)
+	{
+		int value = 0;
+		int i = from;
+		while (i < message.length() && message.charAt(i) >= '0' && message.charAt(i) <= '9')
+		{
+			if (value > (Integer.MAX_VALUE - 9) / 10)
+			{
+				return -1;
+			}
+			value = value * 10 + message.charAt(i) - '0';
+			i++;
+		}
+		return i == from ? -1 : value;
+	}
+
+	/**
+	 * @return the index just after the digits starting at from
+	 */
+	static int skipDigits(final String message, final int from)
+	{
+		int i = from;
+		while (i < message.length() && message.charAt(i) >= '0' && message.charAt(i) <= '9')
+		{
+			i++;
+		}
+		return i;
+	}
+
+	@RequiredArgsConstructor
+	private static final class Entry
+	{
+		private final String literal;
+		private final Rule rule;
+	}
+}
@@ -1,8 +1,12 @@
 package com.doomlootlost;
 
+import com.doomlootlost.localstorage.DurabilityPolicy;
+import com.doomlootlost.localstorage.RecordFormat;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
 @ConfigGroup("doomlootlost")
 public interface DoomLootLostConfig extends Config
@@ -17,6 +21,50 @@ public interface DoomLootLostConfig extends Config
 		return true;
 	}
 
+	@ConfigItem(
+		keyName = "storageFormat",
+		name = "Storage Format",
+		description = "Format the profile you are logged in on stores risked loot in. Switching converts that profile's log, other profiles keep their own format and new ones start in the last format chosen"
+	)
+	default RecordFormat storageFormat()
+	{
+		return RecordFormat.BINARY;
+	}
+
+	@Range(
+		min = 64
+	)
+	@Units(" kB")
+	@ConfigItem(
+		keyName = "segmentSize",
+		name = "Log Segment Size",
+		description = "Size the log of risked loot is split into segments at, segments are also split after 30 days"
+	)
+	default int segmentSize()
+	{
+		return 1024;
+	}
+
+	@ConfigItem(
+		keyName = "compressSealedSegments",
+		name = "Compress Old Segments",
+		description = "Deflate compress log segments that are no longer written to"
+	)
+	default boolean compressSealedSegments()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "durabilityPolicy",
+		name = "Durability",
+		description = "How often risked loot is forced to disk. Forcing every record is the safest if the client crashes, never forcing is the fastest"
+	)
+	default DurabilityPolicy durabilityPolicy()
+	{
+		return DurabilityPolicy.BATCH;
+	}
+
 	@ConfigItem(
 		keyName = "trackRiskedLoot",
 		name = "Track Risked Loot",
@@ -1,18 +1,26 @@
 package com.doomlootlost;
 
+import com.doomlootlost.collections.IntHashSet;
+import com.doomlootlost.data.LossAggregates;
+import com.doomlootlost.data.LossRankings;
+import com.doomlootlost.data.LossRollups;
+import com.doomlootlost.data.RiskedLootHistory;
 import com.doomlootlost.data.RiskedLootRecord;
+import com.doomlootlost.data.RiskedLootStore;
+import com.doomlootlost.data.RiskedLootTotals;
+import com.doomlootlost.data.WaveStatistics;
+import com.doomlootlost.localstorage.ItemDictionary;
 import com.doomlootlost.localstorage.LTItemEntry;
 import com.doomlootlost.localstorage.LootLostWriter;
 import com.doomlootlost.ui.LootLoggerPanel;
 import com.google.inject.Provides;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import javax.inject.Inject;
 import javax.swing.SwingUtilities;
 import lombok.Getter;
@@ -21,16 +29,26 @@ import net.runelite.api.ChatMessageType;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
 import net.runelite.api.ItemComposition;
+import net.runelite.api.NPC;
 import net.runelite.api.events.ActorDeath;
 import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameStateChanged;
 import net.runelite.api.events.GameTick;
 import net.runelite.api.events.MenuOptionClicked;
+import net.runelite.api.events.NpcDespawned;
+import net.runelite.api.events.NpcSpawned;
+import net.runelite.api.events.ScriptPostFired;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.api.events.WidgetClosed;
 import net.runelite.api.events.WidgetLoaded;
-import net.runelite.api.widgets.Widget;
 import net.runelite.client.callback.ClientThread;
+import net.runelite.client.chat.ChatColorType;
+import net.runelite.client.chat.ChatMessageBuilder;
+import net.runelite.client.chat.ChatMessageManager;
+import net.runelite.client.chat.QueuedMessage;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.config.RuneScapeProfileType;
+import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.game.ItemManager;
@@ -49,9 +67,7 @@ import net.runelite.client.util.Text;
 public class DoomLootLostPlugin extends Plugin
 {
 	private static final String DOOM_BOSS_NAME = "Doom of Mokhaiotl";
-	private static final Pattern DEATH_PATTERN = Pattern.compile("You have been defeated by (.*)!");
-	private static final Pattern WAVE_COMPLETE_PATTERN = Pattern.compile("Wave (\\d+) complete!");
-	private static final Pattern LOOT_CHOICE_PATTERN = Pattern.compile("(Claim|Risk) your loot");
+	private static final String WAVE_COMPLETE_SUFFIX = " complete!";
 
 	@Inject
 	private Client client;
@@ -71,33 +87,68 @@ public class DoomLootLostPlugin extends Plugin
 	@Inject
 	private LootLostWriter writer;
 
+	@Inject
+	private ItemPriceCache priceCache;
+
 	@Inject
 	private PluginManager pluginManager;
 
 	@Inject
 	private ConfigManager configManager;
 
+	@Inject
+	private ScheduledExecutorService executor;
+
+	@Inject
+	private EventBus eventBus;
+
+	@Inject
+	private DoomLootScanner lootScanner;
+
+	@Inject
+	private ChatMessageManager chatMessageManager;
+
 	private LootLoggerPanel panel;
+	private final ChatMessageClassifier chatClassifier = createChatClassifier();
 	private NavigationButton navButton;
 
 	@Getter
 	private int doomDeaths = 0;
-	private boolean inDoomInstance = false;
+
+	private final EncounterTracker encounter = new EncounterTracker(this::onEncounterTransition);
 
 	// Risked loot tracking
 	private final List<LTItemEntry> currentRiskedLoot = new ArrayList<>();
-	private final List<RiskedLootRecord> riskedLootHistory = new ArrayList<>();
-	private boolean hasUnclaimedLoot = false;
+	// What the panel shows of the history is loaded from the writer's statistics snapshot, the records stay in the log
+	// Lost items totalled over the history, read by the panel
+	@Getter
+	private volatile LossAggregates lossAggregates = new LossAggregates();
+	// Most valuable losses and deepest waves, read by the panel
+	private volatile LossRankings lossRankings = new LossRankings();
+	// Outcomes per day, week and month, checkpointed by the writer and kept up to date here between loads
+	@Getter
+	private volatile LossRollups lossRollups = new LossRollups();
+	// Risk per wave, for the odds of descending with the loot at risk
+	@Getter
+	private volatile WaveStatistics waveStatistics = new WaveStatistics();
 	private int currentWave = 0;
 	private long riskedLootValue = 0L;
 
-	// Claim tracking system to prevent re-tracking until new boss encounter
-	private boolean lootClaimed = false; // Track if loot has been claimed - don't track while true
-
-	// Enhanced instance tracking
-	private boolean everSeenDoomBoss = false; // Track if we've ever seen the boss in this session
-	private long lastBossSeenTime = 0L; // When we last saw the boss
-	private static final long INSTANCE_TIMEOUT = 300000L; // 5 minutes in milliseconds
+	// History loading happens in the background, records made meanwhile are merged in once it completes
+	@Getter
+	private volatile boolean historyLoading = false;
+	private int historyGeneration = 0;
+	private final List<RiskedLootRecord> recordsDuringLoad = new ArrayList<>();
+	// Writer sequence of each record made during the load, Long.MAX_VALUE for records the writer didn't take
+	private final List<Long> sequencesDuringLoad = new ArrayList<>();
+	// Deaths made during the load and their writer sequences, kept aside the same way
+	private final List<Long> deathsDuringLoad = new ArrayList<>();
+	private final List<Long> deathSequencesDuringLoad = new ArrayList<>();
+
+	// Boss presence follows NPC spawns and despawns rather than scanning every NPC each tick
+	private NPC doomBoss;
+	// Ids the boss has been seen with, so its other forms are recognised without comparing names
+	private final IntHashSet doomNpcIds = new IntHashSet();
 
 	// Statistics
 	private int lootLostToDeaths = 0;
@@ -118,21 +169,18 @@ public class DoomLootLostPlugin extends Plugin
 		lootLostToDeaths = config.lootLostToDeaths();
 		totalLootValueLost = config.totalLootValueLost();
 
+		writer.setSegmentSize(config.segmentSize() * 1024L);
+		writer.setCompressSealedSegments(config.compressSealedSegments());
+		writer.setDurabilityPolicy(config.durabilityPolicy());
+		writer.setPreferredFormat(config.storageFormat());
+
 		// Set up writer username FIRST (needed for data loading)
 		if (client.getGameState().equals(GameState.LOGGED_IN) || client.getGameState().equals(GameState.LOADING))
 		{
 			updateWriterUsername();
 		}
 
-		// Load historical risked loot data AFTER writer is set up
-		loadHistoricalRiskedLootData();
-
-		// Log loaded data
-		log.info("Plugin startup complete - Deaths: {}, Lost loot count: {}, Total value lost: {}",
-			doomDeaths, lootLostToDeaths, totalLootValueLost);
-		log.info("Loaded {} historical risked loot records", riskedLootHistory.size());
-
-		// Create UI AFTER data is loaded
+		// Create UI, it shows a loading state until the history has loaded
 		panel = new LootLoggerPanel(itemManager, this);
 
 		final BufferedImage icon = ImageUtil.loadImageResource(getClass(), "panel-icon.png");
@@ -149,11 +197,24 @@ public class DoomLootLostPlugin extends Plugin
 			clientToolbar.addNavigation(navButton);
 		}
 
-		// Refresh UI to ensure data is displayed
-		if (config.enableUI())
+		// Load historical risked loot data AFTER writer is set up
+		loadHistoricalRiskedLootData();
+
+		// The boss may already be there when the plugin is turned on, it won't spawn again
+		clientThread.invokeLater(() ->
 		{
-			SwingUtilities.invokeLater(() -> panel.showMainView());
-		}
+			for (NPC npc : client.getNpcs())
+			{
+				if (isDoomNpc(npc))
+				{
+					doomBoss = npc;
+					encounter.bossSeen(client.getMapRegions(), client.getTickCount());
+				}
+			}
+		});
+
+		log.info("Plugin startup complete - Deaths: {}, Lost loot count: {}, Total value lost: {}",
+			doomDeaths, lootLostToDeaths, totalLootValueLost);
 
 		// Ensure Loot Tracker plugin is enabled
 		final Optional<Plugin> mainPlugin = pluginManager.getPlugins().stream().filter(p -> p.getName().equals("Loot Tracker")).findFirst();
@@ -169,7 +230,7 @@ public class DoomLootLostPlugin extends Plugin
 		clientToolbar.removeNavigation(navButton);
 
 		// Ensure all pending data is saved before shutdown
-		if (hasUnclaimedLoot && !currentRiskedLoot.isEmpty())
+		if (encounter.getState().holdsLoot() && !currentRiskedLoot.isEmpty())
 		{
 			log.info("Saving pending risked loot data on shutdown");
 			handleLostRiskedLoot();
@@ -183,7 +244,18 @@ public class DoomLootLostPlugin extends Plugin
 		log.info("Plugin shutdown complete - Final stats: Deaths: {}, Lost loot: {}, Value lost: {}",
 			doomDeaths, lootLostToDeaths, totalLootValueLost);
 
+		// Drop a history load still in progress, the records kept aside for it are already queued for the writer
+		historyGeneration++;
+		historyLoading = false;
+		recordsDuringLoad.clear();
+		sequencesDuringLoad.clear();
+		deathsDuringLoad.clear();
+		deathSequencesDuringLoad.clear();
+
+		// Write out any records still queued for the background writer
+		writer.shutDown();
 		writer.setName(null);
+		priceCache.invalidate();
 	}
 
 	@Subscribe
@@ -202,6 +274,22 @@ public class DoomLootLostPlugin extends Plugin
 					clientToolbar.removeNavigation(navButton);
 				}
 			}
+			else if (event.getKey().equals("storageFormat"))
+			{
+				writer.setPreferredFormat(config.storageFormat());
+			}
+			else if (event.getKey().equals("segmentSize"))
+			{
+				writer.setSegmentSize(config.segmentSize() * 1024L);
+			}
+			else if (event.getKey().equals("compressSealedSegments"))
+			{
+				writer.setCompressSealedSegments(config.compressSealedSegments());
+			}
+			else if (event.getKey().equals("durabilityPolicy"))
+			{
+				writer.setDurabilityPolicy(config.durabilityPolicy());
+			}
 		}
 	}
 
@@ -214,7 +302,7 @@ public class DoomLootLostPlugin extends Plugin
 		if (event.getActor() == client.getLocalPlayer())
 		{
 			// If player has unclaimed loot, they must have died during Doom encounter
-			if (hasUnclaimedLoot)
+			if (encounter.getState().holdsLoot())
 			{
 				handleLostRiskedLoot();
 			}
@@ -223,8 +311,9 @@ public class DoomLootLostPlugin extends Plugin
 			boolean nearDoom = isDoomBossNearby();
 			boolean inCombat = isInCombatWithDoomBoss();
 
-			if (nearDoom || inCombat || inDoomInstance)
+			if (nearDoom || inCombat || encounter.getState() != EncounterState.OUTSIDE)
 			{
+				recordDeath();
 				doomDeaths++;
 				configManager.setConfiguration("doomlootlost", "doomDeaths", doomDeaths);
 				log.info("Player died to Doom of Mokhaiotl! Total deaths: {}", doomDeaths);
@@ -241,44 +330,13 @@ public class DoomLootLostPlugin extends Plugin
 	@Subscribe
 	public void onGameTick(final GameTick event)
 	{
-		// Enhanced Doom boss instance detection
-		if (client.getLocalPlayer() == null)
-		{
-			return;
-		}
+		encounter.tick(doomBoss != null, client.getMapRegions(), client.getTickCount());
 
-		// If we see the boss, mark that we've seen it and update the time
-		if (isDoomBossNearby())
+		// Prices move over time, the panel only shows the value repriced here
+		if (priceCache.isStale())
 		{
-			// Reset loot claimed flag when we see the boss (new encounter)
-			lootClaimed = false;
-			log.debug("Boss seen - resetting loot claimed flag");
-
-			everSeenDoomBoss = true;
-			lastBossSeenTime = System.currentTimeMillis();
-			inDoomInstance = true;
-		}
-		// If we've seen the boss before but can't see it now, stay in instance mode for a while
-		else if (everSeenDoomBoss)
-		{
-			long timeSinceLastSeen = System.currentTimeMillis() - lastBossSeenTime;
-			if (timeSinceLastSeen < INSTANCE_TIMEOUT)
-			{
-				// Still consider ourselves in the instance for a few minutes after boss disappears
-				inDoomInstance = true;
-			}
-			else
-			{
-				// Been too long, probably left the instance
-				inDoomInstance = false;
-				everSeenDoomBoss = false;
-				clearCurrentRiskedLoot(); // Clear any pending loot when leaving
-			}
-		}
-		else
-		{
-			// Never seen the boss, not in instance
-			inDoomInstance = false;
+			refreshCurrentValue();
+			refreshPanel();
 		}
 	}
 
@@ -290,67 +348,98 @@ public class DoomLootLostPlugin extends Plugin
 			return;
 		}
 
-		final String message = event.getMessage();
+		chatClassifier.classify(event.getMessage());
+	}
+
+	private ChatMessageClassifier createChatClassifier()
+	{
+		final ChatMessageClassifier classifier = new ChatMessageClassifier();
+		classifier.register("Wave ", this::onWaveComplete);
+		classifier.register("Claim your loot", (message, from) -> onLootChoice("Claim"));
+		classifier.register("Risk your loot", (message, from) -> onLootChoice("Risk"));
+		classifier.register("You have been defeated by ", this::onDefeated);
+		return classifier;
+	}
 
-		// Check for wave completion messages
-		final Matcher waveCompleteMatcher = WAVE_COMPLETE_PATTERN.matcher(message);
-		if (waveCompleteMatcher.find() && inDoomInstance)
+	/**
+	 * Wave N complete!
+	 */
+	private boolean onWaveComplete(final String message, final int from)
+	{
+		final int wave = ChatMessageClassifier.parseNumber(message, from);
+		if (wave == -1 || !message.startsWith(WAVE_COMPLETE_SUFFIX, ChatMessageClassifier.skipDigits(message, from)))
 		{
-			currentWave = Integer.parseInt(waveCompleteMatcher.group(1));
+			return false;
 		}
 
-		// Check for loot choice messages
-		final Matcher lootChoiceMatcher = LOOT_CHOICE_PATTERN.matcher(message);
-		if (lootChoiceMatcher.find() && inDoomInstance)
+		if (encounter.getState() != EncounterState.OUTSIDE)
 		{
-			log.info("Loot choice detected: {}", lootChoiceMatcher.group(1));
+			currentWave = wave;
 		}
+		return true;
+	}
 
-		// Check for death messages
-		final Matcher deathMatcher = DEATH_PATTERN.matcher(message);
-		if (deathMatcher.find())
+	private boolean onLootChoice(final String choice)
+	{
+		if (encounter.getState() != EncounterState.OUTSIDE)
 		{
-			final String killerName = deathMatcher.group(1);
-			log.info("Death message detected! Killed by: {}", killerName);
+			log.info("Loot choice detected: {}", choice);
+		}
+		return true;
+	}
 
-			// Check if killed by Doom of Mokhaiotl
-			if (killerName.equalsIgnoreCase(DOOM_BOSS_NAME))
-			{
-				doomDeaths++;
-				configManager.setConfiguration("doomlootlost", "doomDeaths", doomDeaths);
-				log.info("Player died to Doom of Mokhaiotl! Total deaths: {}", doomDeaths);
+	/**
+	 * You have been defeated by killer!
+	 */
+	private boolean onDefeated(final String message, final int from)
+	{
+		final int end = message.lastIndexOf('!');
+		if (end < from)
+		{
+			return false;
+		}
 
-				// Update UI if enabled
-				if (config.enableUI())
-				{
-					SwingUtilities.invokeLater(() -> panel.updateDeathCount());
-				}
+		log.info("Death message detected! Killed by: {}", message.substring(from, end));
+
+		// Check if killed by Doom of Mokhaiotl
+		if (end - from == DOOM_BOSS_NAME.length() && message.regionMatches(true, from, DOOM_BOSS_NAME, 0, end - from))
+		{
+			doomDeaths++;
+			configManager.setConfiguration("doomlootlost", "doomDeaths", doomDeaths);
+			log.info("Player died to Doom of Mokhaiotl! Total deaths: {}", doomDeaths);
+
+			// Update UI if enabled
+			if (config.enableUI())
+			{
+				SwingUtilities.invokeLater(() -> panel.updateDeathCount());
 			}
 		}
+		return true;
 	}
 
 	@Subscribe
 	public void onGameStateChanged(final GameStateChanged event)
 	{
-		if (event.getGameState() == GameState.LOGGED_IN)
+		if (event.getGameState() == GameState.LOGIN_SCREEN || event.getGameState() == GameState.HOPPING)
 		{
-			updateWriterUsername();
-
-			// Load data when client logs in (in case it wasn't loaded during startup)
-			if (riskedLootHistory.isEmpty())
-			{
-				loadHistoricalRiskedLootData();
+			doomBoss = null;
+		}
+		else if (event.getGameState() == GameState.LOADING)
+		{
+			encounter.mapLoaded();
+		}
 
-				// Refresh UI if it exists
-				if (panel != null && config.enableUI())
-				{
-					SwingUtilities.invokeLater(() -> panel.showMainView());
-				}
-			}
+		if (event.getGameState() == GameState.LOGGED_IN && updateWriterUsername())
+		{
+			// The history loaded so far, or still loading, is another profile's, or none if startup was before logging in
+			loadHistoricalRiskedLootData();
 		}
 	}
 
-	private void updateWriterUsername()
+	/**
+	 * @return true if the writer moved to another profile's folder
+	 */
+	private boolean updateWriterUsername()
 	{
 		String folder = String.valueOf(client.getAccountHash());
 		RuneScapeProfileType profileType = RuneScapeProfileType.getCurrent(client);
@@ -359,15 +448,18 @@ public class DoomLootLostPlugin extends Plugin
 			folder += "-" + Text.titleCase(profileType);
 		}
 
-		if (folder.equalsIgnoreCase(writer.getName()))
+		if (folder.equalsIgnoreCase(writer.getName()) || !writer.setPlayerUsername(folder))
 		{
-			return;
+			return false;
 		}
 
-		if (writer.setPlayerUsername(folder))
+		// The setting shows the format of the profile logged in on, every profile keeps its own
+		if (config.storageFormat() != writer.getFormat())
 		{
-			localPlayerNameChanged();
+			configManager.setConfiguration("doomlootlost", "storageFormat", writer.getFormat());
 		}
+		localPlayerNameChanged();
+		return true;
 	}
 
 	private void localPlayerNameChanged()
@@ -381,6 +473,13 @@ public class DoomLootLostPlugin extends Plugin
 
 	private LTItemEntry createLTItemEntry(final int id, final int qty)
 	{
+		// Items seen before don't need their composition looked up again
+		final ItemDictionary.ItemDefinition known = writer.getItemDictionary().get(id);
+		if (known != null && known.getPriceId() != -1)
+		{
+			return new LTItemEntry(known.getName(), id, qty, itemManager.getItemPrice(known.getPriceId()));
+		}
+
 		final ItemComposition c = itemManager.getItemComposition(id);
 		final int realId = c.getNote() == -1 ? c.getId() : c.getLinkedNoteId();
 		final int price = itemManager.getItemPrice(realId);
@@ -389,30 +488,110 @@ public class DoomLootLostPlugin extends Plugin
 		String itemName = c.getName();
 		if (itemName == null || itemName.equals("null") || itemName.trim().isEmpty())
 		{
-			itemName = "Unknown Item (ID: " + id + ")";
+			itemName = ItemDictionary.unknownName(id);
+		}
+		else
+		{
+			writer.getItemDictionary().define(id, itemName, realId);
 		}
 
 		return new LTItemEntry(itemName, id, qty, price);
 	}
 
+	@Subscribe
+	public void onNpcSpawned(final NpcSpawned event)
+	{
+		if (isDoomNpc(event.getNpc()))
+		{
+			doomBoss = event.getNpc();
+
+			// The boss appearing starts a new encounter, loot is tracked again after the last one was resolved
+			encounter.bossSeen(client.getMapRegions(), client.getTickCount());
+		}
+	}
+
+	@Subscribe
+	public void onNpcDespawned(final NpcDespawned event)
+	{
+		if (event.getNpc() == doomBoss)
+		{
+			doomBoss = null;
+		}
+	}
+
+	/**
+	 * @return true if the boss is in the loaded scene
+	 */
 	private boolean isDoomBossNearby()
 	{
-		if (client.getLocalPlayer() == null)
+		return doomBoss != null;
+	}
+
+	/**
+	 * @return where the player is in the encounter
+	 */
+	public EncounterState getEncounterState()
+	{
+		return encounter.getState();
+	}
+
+	/**
+	 * Move the encounter to another state
+	 */
+	private void transition(final EncounterState state)
+	{
+		encounter.transition(state, client.getTickCount());
+	}
+
+	/**
+	 * Run what entering the state takes and post the change
+	 */
+	private void onEncounterTransition(final EncounterState previous, final EncounterState state, final int ticks)
+	{
+		switch (state)
+		{
+			case OUTSIDE:
+				// Loot isn't carried out of the instance
+				clearCurrentRiskedLoot();
+				break;
+			case LOOT_OFFERED:
+				// Loot offered after descending is for the wave that was risked, otherwise it is the first wave's
+				if (previous != EncounterState.RISKING)
+				{
+					currentWave = 1;
+				}
+				break;
+			case RISKING:
+				currentWave++;
+				break;
+			case RESOLVED:
+				clearCurrentRiskedLoot();
+				break;
+			default:
+				break;
+		}
+
+		log.debug("Encounter {} -> {} after {} ticks", previous, state, ticks);
+		eventBus.post(new EncounterStateChanged(previous, state, ticks));
+	}
+
+	private boolean isDoomNpc(final NPC npc)
+	{
+		if (npc == null)
 		{
 			return false;
 		}
 
-		// Check all NPCs in the area for Doom of Mokhaiotl
-		for (net.runelite.api.NPC npc : client.getNpcs())
+		if (doomNpcIds.contains(npc.getId()))
 		{
-			if (npc != null && npc.getName() != null && npc.getName().equalsIgnoreCase(DOOM_BOSS_NAME))
-			{
-				// Check if the NPC is within a reasonable distance (e.g., 50 tiles)
-				int distance = client.getLocalPlayer().getWorldLocation().distanceTo(npc.getWorldLocation());
-				return distance <= 50;
-			}
+			return true;
 		}
 
+		if (npc.getName() != null && npc.getName().equalsIgnoreCase(DOOM_BOSS_NAME))
+		{
+			doomNpcIds.add(npc.getId());
+			return true;
+		}
 		return false;
 	}
 
@@ -427,13 +606,9 @@ public class DoomLootLostPlugin extends Plugin
 		if (client.getLocalPlayer().getInteracting() != null)
 		{
 			net.runelite.api.Actor target = client.getLocalPlayer().getInteracting();
-			if (target instanceof net.runelite.api.NPC)
+			if (target instanceof NPC && isDoomNpc((NPC) target))
 			{
-				net.runelite.api.NPC npc = (net.runelite.api.NPC) target;
-				if (npc.getName() != null && npc.getName().equalsIgnoreCase(DOOM_BOSS_NAME))
-				{
-					return true;
-				}
+				return true;
 			}
 		}
 
@@ -446,44 +621,70 @@ public class DoomLootLostPlugin extends Plugin
 	public void onWidgetLoaded(WidgetLoaded event)
 	{
 		// Check specifically for Doom loot interface (Group ID 919)
-		if (event.getGroupId() == 919 && config.trackRiskedLoot())
+		if (event.getGroupId() == MenuClickClassifier.LOOT_GROUP_ID && config.trackRiskedLoot())
 		{
 			// Don't track loot if we've already claimed loot
-			if (lootClaimed)
+			if (encounter.getState() == EncounterState.RESOLVED)
 			{
 				log.debug("Ignoring widget load - loot already claimed");
 				return;
 			}
 
-			// Scan for Doom loot items
-			clientThread.invokeLater(() -> scanDoomLootOnly());
+			// Scan for Doom loot items, the interface was rebuilt so every slot is read again
+			lootScanner.opened();
+			clientThread.invokeLater(this::scanDoomLoot);
 
-			// Set flag that loot is available
-			hasUnclaimedLoot = true;
-			currentWave = 1;
+			transition(EncounterState.LOOT_OFFERED);
 		}
+	}
 
+	@Subscribe
+	public void onWidgetClosed(WidgetClosed event)
+	{
+		if (event.getGroupId() == MenuClickClassifier.LOOT_GROUP_ID)
+		{
+			lootScanner.closed();
+		}
 	}
 
 	@Subscribe
-	public void onMenuOptionClicked(MenuOptionClicked event)
+	public void onScriptPreFired(ScriptPreFired event)
 	{
-		// Only process if we have unclaimed loot
-		if (!hasUnclaimedLoot)
+		if (lootScanner.isOpen() && event.getScriptEvent() != null)
 		{
-			return;
+			lootScanner.scriptStarted(event.getScriptId(), event.getScriptEvent().getSource());
 		}
+	}
 
-		String option = event.getMenuOption().toLowerCase();
-		String target = event.getMenuTarget().toLowerCase();
+	@Subscribe
+	public void onScriptPostFired(ScriptPostFired event)
+	{
+		// Scripts redraw the loot interface in place as waves add loot, only slots that changed cause an update
+		if (encounter.getState().holdsLoot() && config.trackRiskedLoot() && lootScanner.scriptFinished(event.getScriptId()))
+		{
+			readScannedLoot();
+		}
+	}
 
-		if (option.contains("claim") || target.contains("claim"))
+	@Subscribe
+	public void onMenuOptionClicked(MenuOptionClicked event)
+	{
+		// Only process if we have unclaimed loot
+		if (!encounter.getState().holdsLoot())
 		{
-			handleLootClaimed();
+			return;
 		}
-		else if (option.contains("descend") || target.contains("descend") || option.contains("risk") || option.contains("continue"))
+
+		switch (MenuClickClassifier.classify(event.getMenuAction(), event.getParam1(), event.getMenuOption(), event.getMenuTarget()))
 		{
-			handleLootRisked();
+			case CLAIM:
+				handleLootClaimed();
+				break;
+			case RISK:
+				handleLootRisked();
+				break;
+			default:
+				break;
 		}
 	}
 
@@ -496,8 +697,6 @@ public class DoomLootLostPlugin extends Plugin
 			.mapToLong(item -> (long) item.getPrice() * item.getQuantity())
 			.sum();
 
-		hasUnclaimedLoot = !currentRiskedLoot.isEmpty();
-
 		log.info("Updated risked loot: {} items worth {} GP", currentRiskedLoot.size(), riskedLootValue);
 
 		// Update UI if enabled
@@ -511,9 +710,6 @@ public class DoomLootLostPlugin extends Plugin
 	{
 		log.info("Player claimed loot: {} items worth {} GP", currentRiskedLoot.size(), riskedLootValue);
 
-		// Set loot claimed flag - won't track new loot until we see the boss again
-		lootClaimed = true;
-
 		// Record this as successfully claimed loot
 		if (!currentRiskedLoot.isEmpty())
 		{
@@ -524,13 +720,12 @@ public class DoomLootLostPlugin extends Plugin
 				riskedLootValue,
 				false // not lost
 			);
-			riskedLootHistory.add(record);
-
 			// Save to storage
-			writer.addRiskedLootRecord(record);
+			recordRiskedLoot(record);
 		}
 
-		clearCurrentRiskedLoot();
+		// Won't track new loot until we see the boss again
+		transition(EncounterState.RESOLVED);
 	}
 
 	private void handleLootRisked()
@@ -539,7 +734,7 @@ public class DoomLootLostPlugin extends Plugin
 			currentRiskedLoot.size(), riskedLootValue, currentWave + 1);
 
 		// Loot remains in currentRiskedLoot for potential loss tracking
-		currentWave++;
+		transition(EncounterState.RISKING);
 	}
 
 	private void handleLostRiskedLoot()
@@ -552,10 +747,8 @@ public class DoomLootLostPlugin extends Plugin
 			riskedLootValue,
 			true // lost to death
 		);
-		riskedLootHistory.add(lostRecord);
-
 		// Save to storage
-		writer.addRiskedLootRecord(lostRecord);
+		recordRiskedLoot(lostRecord);
 
 		// Update statistics
 		lootLostToDeaths++;
@@ -565,7 +758,7 @@ public class DoomLootLostPlugin extends Plugin
 		configManager.setConfiguration("doomlootlost", "lootLostToDeaths", lootLostToDeaths);
 		configManager.setConfiguration("doomlootlost", "totalLootValueLost", totalLootValueLost);
 
-		clearCurrentRiskedLoot();
+		transition(EncounterState.RESOLVED);
 
 		// Update UI
 		if (config.enableUI())
@@ -577,7 +770,6 @@ public class DoomLootLostPlugin extends Plugin
 	private void clearCurrentRiskedLoot()
 	{
 		currentRiskedLoot.clear();
-		hasUnclaimedLoot = false;
 		riskedLootValue = 0L;
 		currentWave = 0;
 
@@ -590,176 +782,292 @@ public class DoomLootLostPlugin extends Plugin
 
 	// ========== GETTER METHODS FOR UI ==========
 
-	public List<RiskedLootRecord> getRiskedLootHistory()
+	/**
+	 * @return the value of every item lost at current prices, as repriced on the client thread when the lost items last changed
+	 */
+	public long getCurrentValueLost()
 	{
-		return new ArrayList<>(riskedLootHistory);
+		return priceCache.getCurrentValue();
 	}
 
-	private void loadHistoricalRiskedLootData()
+	/**
+	 * Reprice the lost item totals, on the client thread as looking prices up requires
+	 */
+	private void refreshCurrentValue()
 	{
-		try
-		{
-			Collection<RiskedLootRecord> historicalRecords = writer.loadRiskedLootRecords();
-
-			riskedLootHistory.clear();
+		priceCache.refresh(lossAggregates.getItems());
+	}
 
-			// Validate and filter records
-			for (RiskedLootRecord record : historicalRecords)
-			{
-				if (isValidRiskedLootRecord(record))
-				{
-					riskedLootHistory.add(record);
-				}
-				else
-				{
-					log.warn("Skipping invalid risked loot record: {}", record);
-				}
-			}
+	/**
+	 * @return what descending another wave is expected to bring with the loot at risk now, null if no loot is at risk or
+	 * the history has never reached the next wave
+	 */
+	public WaveStatistics.Descent getDescent()
+	{
+		return encounter.getState().holdsLoot() ? waveStatistics.getDescent(currentWave, riskedLootValue) : null;
+	}
 
-			log.info("Loaded {} valid historical risked loot records", riskedLootHistory.size());
+	/**
+	 * @return the most valuable lost records, most valuable first
+	 */
+	public List<RiskedLootRecord> getMostValuableLosses()
+	{
+		return lossRankings.getMostValuableLosses();
+	}
 
-			// Recalculate statistics from loaded data
-			long recalculatedValueLost = 0L;
-			int recalculatedLostCount = 0;
+	/**
+	 * @return the records that ended at the deepest waves, deepest first
+	 */
+	public List<RiskedLootRecord> getDeepestWaves()
+	{
+		return lossRankings.getDeepestWaves();
+	}
 
-			for (RiskedLootRecord record : riskedLootHistory)
+	/**
+	 * Read every valid record of the history from the log, in the order they were recorded.
+	 * Only statistics of the history are kept in memory, so this reads the whole log once the records queued before it have
+	 * been written. Call it off the client thread.
+	 * @return a read only view of the records, later changes don't show up in it
+	 */
+	public List<RiskedLootRecord> getRiskedLootHistory()
+	{
+		final RiskedLootStore records = new RiskedLootStore();
+		writer.openRiskedLootRecords().forEachRemaining(record ->
+		{
+			if (record.isValid())
 			{
-				if (record.isWasLost())
-				{
-					recalculatedValueLost += record.getTotalValue();
-					recalculatedLostCount++;
-				}
+				records.add(record);
 			}
+		});
+		return records.snapshot().asList();
+	}
 
-			// Update statistics if they don't match (config might be out of sync)
-			if (recalculatedValueLost != totalLootValueLost || recalculatedLostCount != lootLostToDeaths)
+	/**
+	 * Add a record to the history and save it, records made while the history is loading are kept aside and merged in
+	 * once it has loaded
+	 */
+	private void recordRiskedLoot(final RiskedLootRecord record)
+	{
+		final CompletableFuture<Boolean> saved = writer.addRiskedLootRecord(record);
+		saved.thenAccept(ok ->
+		{
+			if (!ok)
 			{
-				log.info("Statistics mismatch detected - Recalculated: {} lost, {} value vs Config: {} lost, {} value",
-					recalculatedLostCount, recalculatedValueLost, lootLostToDeaths, totalLootValueLost);
-
-				totalLootValueLost = recalculatedValueLost;
-				lootLostToDeaths = recalculatedLostCount;
-
-				// Update config to match
-				configManager.setConfiguration("doomlootlost", "lootLostToDeaths", lootLostToDeaths);
-				configManager.setConfiguration("doomlootlost", "totalLootValueLost", totalLootValueLost);
+				reportUnsavedRecord(record);
 			}
+		});
+
+		if (historyLoading)
+		{
+			// A record that already failed can't be part of the log being loaded
+			final boolean failed = saved.isDone() && !saved.join();
+			recordsDuringLoad.add(record);
+			sequencesDuringLoad.add(failed ? Long.MAX_VALUE : writer.getAppendedRecords());
 		}
-		catch (Exception e)
+		else
 		{
-			log.warn("Failed to load historical risked loot data", e);
+			addToStatistics(record);
+			// Loot left behind is recorded from shutDown too, which may not be on the client thread
+			clientThread.invoke(this::refreshCurrentValue);
 		}
 	}
 
-	private boolean isValidRiskedLootRecord(RiskedLootRecord record)
+	/**
+	 * Save a death to the boss and count it in the rollups, deaths made while the history is loading are kept aside like records
+	 */
+	private void recordDeath()
 	{
-		if (record == null)
+		final long timestamp = System.currentTimeMillis();
+		final CompletableFuture<Boolean> saved = writer.addDeath(timestamp);
+		if (historyLoading)
 		{
-			return false;
+			final boolean failed = saved.isDone() && !saved.join();
+			deathsDuringLoad.add(timestamp);
+			deathSequencesDuringLoad.add(failed ? Long.MAX_VALUE : writer.getAppendedDeaths());
+		}
+		else
+		{
+			lossRollups.addDeath(timestamp);
 		}
+	}
+
+	/**
+	 * Tell the player a record didn't reach the log, it is kept in memory until the client closes but won't be loaded again
+	 */
+	private void reportUnsavedRecord(final RiskedLootRecord record)
+	{
+		log.error("Risked loot record from wave {} worth {} GP was not saved", record.getWave(), record.getTotalValue());
+
+		final String message = new ChatMessageBuilder()
+			.append(ChatColorType.HIGHLIGHT)
+			.append("Doom Loot Lost could not save your risked loot from wave " + record.getWave() + ", see the client log for details.")
+			.build();
+		chatMessageManager.queue(QueuedMessage.builder()
+			.type(ChatMessageType.CONSOLE)
+			.runeLiteFormattedMessage(message)
+			.build());
+	}
 
-		if (record.getItems() == null || record.getItems().isEmpty())
+	/**
+	 * Fold a record made since the history was loaded into everything derived from the history, the writer folds the same
+	 * valid records into its snapshot
+	 */
+	private void addToStatistics(final RiskedLootRecord record)
+	{
+		if (record.isValid())
 		{
-			return false;
+			lossAggregates.add(record);
+			lossRankings.add(record);
+			lossRollups.add(record);
+			waveStatistics.add(record);
 		}
+	}
 
-		if (record.getTimestamp() == null)
+	/**
+	 * Load the statistics of the risked loot history on a background thread, the panel shows a loading state until
+	 * they are merged in on the client thread
+	 */
+	private void loadHistoricalRiskedLootData()
+	{
+		final int generation = ++historyGeneration;
+		historyLoading = true;
+		// Records kept aside for a load this one replaces were written to the folder that load was reading
+		recordsDuringLoad.clear();
+		sequencesDuringLoad.clear();
+		deathsDuringLoad.clear();
+		deathSequencesDuringLoad.clear();
+		refreshPanel();
+
+		executor.execute(() ->
 		{
-			return false;
+			RiskedLootHistory history = null;
+			try
+			{
+				history = writer.loadRiskedLootHistory();
+			}
+			catch (Exception e)
+			{
+				log.warn("Failed to load historical risked loot data", e);
+			}
+
+			final RiskedLootHistory loaded = history;
+			clientThread.invokeLater(() -> mergeRiskedLootHistory(generation, loaded));
+		});
+	}
+
+	/**
+	 * Swap in a loaded history, keeping the records made while it loaded that it doesn't already include
+	 * @param history the loaded history, or null if loading failed
+	 */
+	private void mergeRiskedLootHistory(final int generation, final RiskedLootHistory history)
+	{
+		// A newer load was started, or the plugin was shut down
+		if (generation != historyGeneration)
+		{
+			return;
 		}
 
-		if (record.getWave() <= 0)
+		historyLoading = false;
+		if (history == null)
 		{
-			return false;
+			recordsDuringLoad.forEach(this::addToStatistics);
+			deathsDuringLoad.forEach(lossRollups::addDeath);
+			recordsDuringLoad.clear();
+			sequencesDuringLoad.clear();
+			deathsDuringLoad.clear();
+			deathSequencesDuringLoad.clear();
+			refreshCurrentValue();
+			refreshPanel();
+			return;
 		}
 
-		// Validate each item in the record
-		for (LTItemEntry item : record.getItems())
+		final RiskedLootTotals totals = history.getTotals();
+		lossAggregates = history.getAggregates();
+		lossRollups = history.getRollups();
+		waveStatistics = history.getWaves();
+		lossRankings = history.getRankings();
+		for (int i = 0; i < recordsDuringLoad.size(); i++)
 		{
-			if (item == null || item.getName() == null || item.getName().trim().isEmpty())
+			// The writer numbers every record it takes, the ones up to the history's count were read as part of it
+			if (sequencesDuringLoad.get(i) <= history.getAppendedRecords())
 			{
-				return false;
+				continue;
 			}
 
-			if (item.getId() <= 0 || item.getQuantity() <= 0)
+			final RiskedLootRecord record = recordsDuringLoad.get(i);
+			if (record.isValid())
 			{
-				return false;
+				totals.add(record);
+				addToStatistics(record);
 			}
 		}
-
-		return true;
+		for (int i = 0; i < deathsDuringLoad.size(); i++)
+		{
+			if (deathSequencesDuringLoad.get(i) > history.getAppendedDeaths())
+			{
+				lossRollups.addDeath(deathsDuringLoad.get(i));
+			}
+		}
+		recordsDuringLoad.clear();
+		sequencesDuringLoad.clear();
+		deathsDuringLoad.clear();
+		deathSequencesDuringLoad.clear();
+
+		log.info("Loaded risked loot statistics of {} records", totals.getRecordCount());
+		updateLossStatistics(totals);
+		refreshCurrentValue();
+		refreshPanel();
 	}
 
+	/**
+	 * Bring the loss statistics in line with the ones folded over the log
+	 */
+	private void updateLossStatistics(final RiskedLootTotals totals)
+	{
+		// Update statistics if they don't match (config might be out of sync)
+		if (totals.getValueLost() != totalLootValueLost || totals.getLostCount() != lootLostToDeaths)
+		{
+			log.info("Statistics mismatch detected - Recalculated: {} lost, {} value vs Config: {} lost, {} value",
+				totals.getLostCount(), totals.getValueLost(), lootLostToDeaths, totalLootValueLost);
+
+			totalLootValueLost = totals.getValueLost();
+			lootLostToDeaths = totals.getLostCount();
 
+			// Update config to match
+			configManager.setConfiguration("doomlootlost", "lootLostToDeaths", lootLostToDeaths);
+			configManager.setConfiguration("doomlootlost", "totalLootValueLost", totalLootValueLost);
+		}
+	}
 
-	private void scanDoomLootOnly()
+	private void refreshPanel()
 	{
-		List<LTItemEntry> doomLoot = new ArrayList<>();
+		if (panel != null && config.enableUI())
+		{
+			SwingUtilities.invokeLater(panel::showMainView);
+		}
+	}
 
-		// Scan all components of widget 919 to find the loot
-		for (int componentId = 0; componentId < 50; componentId++)
+	private void scanDoomLoot()
+	{
+		if (lootScanner.scan())
 		{
-			Widget widget = client.getWidget(919, componentId);
-			if (widget != null)
-			{
-				// Check if this widget has item data
-				if (widget.getItemId() > 0)
-				{
-					int itemId = widget.getItemId();
-					int quantity = widget.getItemQuantity();
-					if (quantity <= 0) quantity = 1;
-
-					// Skip unknown items like ID 6512
-					if (itemId == 6512) {
-						continue;
-					}
-
-					// Check if we already found this item (avoid duplicates)
-					boolean alreadyFound = doomLoot.stream()
-						.anyMatch(item -> item.getId() == itemId);
-
-					if (!alreadyFound)
-					{
-						LTItemEntry item = createLTItemEntry(itemId, quantity);
-						doomLoot.add(item);
-					}
-				}
+			readScannedLoot();
+		}
+	}
 
-				// Also check children for items
-				if (widget.getChildren() != null && widget.getChildren().length > 0)
-				{
-					for (Widget child : widget.getChildren())
-					{
-						if (child != null && child.getItemId() > 0)
-						{
-							int itemId = child.getItemId();
-							int quantity = child.getItemQuantity();
-							if (quantity <= 0) quantity = 1;
-
-							// Skip unknown items like ID 6512
-							if (itemId == 6512) {
-								continue;
-							}
-
-							// Check if we already found this item (avoid duplicates)
-							boolean alreadyFound = doomLoot.stream()
-								.anyMatch(item -> item.getId() == itemId);
-
-							if (!alreadyFound)
-							{
-								LTItemEntry item = createLTItemEntry(itemId, quantity);
-								doomLoot.add(item);
-							}
-						}
-					}
-				}
-			}
+	private void readScannedLoot()
+	{
+		if (lootScanner.size() == 0)
+		{
+			return;
 		}
 
-		if (!doomLoot.isEmpty())
+		final List<LTItemEntry> doomLoot = new ArrayList<>(lootScanner.size());
+		for (int i = 0; i < lootScanner.size(); i++)
 		{
-			updateCurrentRiskedLoot(doomLoot);
+			doomLoot.add(createLTItemEntry(lootScanner.getItemId(i), lootScanner.getQuantity(i)));
 		}
+		updateCurrentRiskedLoot(doomLoot);
 	}
 
 
@@ -0,0 +1,274 @@
+package com.doomlootlost;
+
+import com.doomlootlost.collections.IntHashSet;
+import java.util.Arrays;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.widgets.Widget;
+
+/**
+ * Reads the items offered on the Doom loot interface.
+ * The components holding the items are found once, either the children of a container or components the item is set on
+ * directly, after that a scan only reads those slots and compares them with the last scan, so rescanning unchanged loot
+ * costs O(slots) and allocates nothing.
+ */
+@Slf4j
+@Singleton
+class DoomLootScanner
+{
+	// Components of the loot interface probed when looking for the items
+	private static final int MAX_COMPONENTS = 50;
+	// Placeholder shown in empty slots, not a real item
+	private static final int PLACEHOLDER_ITEM_ID = 6512;
+
+	private final Client client;
+
+	// Between the loot interface loading and closing
+	private boolean open;
+	// Component of the loot interface whose children are item slots, -1 if there is none
+	private int container = -1;
+	// Components of the loot interface an item is set on directly
+	private int[] itemComponents = new int[0];
+	// Components holding an item or a placeholder, filled while probing
+	private final int[] probed = new int[MAX_COMPONENTS];
+	// Scripts run for a component of the loot interface or that drew its items, they redraw the items in place
+	private final IntHashSet lootScripts = new IntHashSet();
+
+	// Item and quantity in each slot at the last scan, the container's children first, then the item components
+	private int[] slotItemIds = new int[0];
+	private int[] slotQuantities = new int[0];
+
+	// Distinct items in slot order, the first slot of an item gives its quantity
+	private final IntHashSet seen = new IntHashSet();
+	private int[] itemIds = new int[0];
+	private int[] quantities = new int[0];
+	private int size;
+
+	@Inject
+	DoomLootScanner(final Client client)
+	{
+		this.client = client;
+	}
+
+	/**
+	 * The loot interface was loaded, its items are read again on the next scan
+	 */
+	void opened()
+	{
+		open = true;
+		slotItemIds = new int[0];
+		slotQuantities = new int[0];
+		seen.clear();
+		size = 0;
+	}
+
+	/**
+	 * The loot interface was closed, scripts no longer cause a scan until it opens again
+	 */
+	void closed()
+	{
+		open = false;
+	}
+
+	/**
+	 * @return true if the loot interface is open
+	 */
+	boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * A script is about to run, remember it if it runs for a component of the loot interface
+	 *
+	 * @param source component the script runs for, null if it wasn't run by a component
+	 */
+	void scriptStarted(final int scriptId, final Widget source)
+	{
+		if (open && source != null && source.getId() >>> 16 == MenuClickClassifier.LOOT_GROUP_ID)
+		{
+			lootScripts.add(scriptId);
+		}
+	}
+
+	/**
+	 * Scan after a script that redraws the loot interface, or after any script while the items haven't been found
+	 *
+	 * @return true if the items changed
+	 */
+	boolean scriptFinished(final int scriptId)
+	{
+		if (!open)
+		{
+			return false;
+		}
+
+		if (!isResolved())
+		{
+			// The interface can load before its items are drawn, the script that drew them redraws them later on
+			final boolean changed = scan();
+			if (isResolved())
+			{
+				lootScripts.add(scriptId);
+			}
+			return changed;
+		}
+
+		return lootScripts.contains(scriptId) && scan();
+	}
+
+	/**
+	 * Read the loot interface's slots, finding the components holding the items first if they haven't been found yet
+	 *
+	 * @return true if the items changed since the last scan
+	 */
+	boolean scan()
+	{
+		if (!isResolved() && !find())
+		{
+			return false;
+		}
+
+		final Widget widget = container == -1 ? null : client.getWidget(MenuClickClassifier.LOOT_GROUP_ID, container);
+		final Widget[] children = widget == null ? null : widget.getChildren();
+		final int childSlots = children == null ? 0 : children.length;
+		final int slots = childSlots + itemComponents.length;
+		if (slots != slotItemIds.length)
+		{
+			slotItemIds = new int[slots];
+			slotQuantities = new int[slots];
+		}
+
+		boolean changed = false;
+		for (int i = 0; i < slots; i++)
+		{
+			final Widget slot = i < childSlots
+				? children[i]
+				: client.getWidget(MenuClickClassifier.LOOT_GROUP_ID, itemComponents[i - childSlots]);
+			final int itemId = slot == null ? -1 : slot.getItemId();
+			final int quantity = slot == null ? 0 : slot.getItemQuantity();
+			if (itemId != slotItemIds[i] || quantity != slotQuantities[i])
+			{
+				slotItemIds[i] = itemId;
+				slotQuantities[i] = quantity;
+				changed = true;
+			}
+		}
+
+		if (changed)
+		{
+			collectItems();
+		}
+		return changed;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	int getItemId(final int i)
+	{
+		return itemIds[i];
+	}
+
+	int getQuantity(final int i)
+	{
+		return quantities[i];
+	}
+
+	private boolean isResolved()
+	{
+		return container != -1 || itemComponents.length > 0;
+	}
+
+	/**
+	 * Probe the loot interface's components for the one with the most item children and for components holding an item
+	 *
+	 * @return true if any item was found
+	 */
+	private boolean find()
+	{
+		int bestItems = 0;
+		int found = 0;
+		boolean componentItems = false;
+		for (int componentId = 0; componentId < MAX_COMPONENTS; componentId++)
+		{
+			final Widget widget = client.getWidget(MenuClickClassifier.LOOT_GROUP_ID, componentId);
+			if (widget == null)
+			{
+				continue;
+			}
+
+			// A placeholder marks a slot an item is set on later
+			final int itemId = widget.getItemId();
+			if (itemId > 0)
+			{
+				probed[found++] = componentId;
+				componentItems |= isItem(itemId);
+			}
+
+			final Widget[] children = widget.getChildren();
+			if (children == null)
+			{
+				continue;
+			}
+
+			int items = 0;
+			for (Widget child : children)
+			{
+				if (child != null && isItem(child.getItemId()))
+				{
+					items++;
+				}
+			}
+
+			if (items > bestItems)
+			{
+				bestItems = items;
+				container = componentId;
+			}
+		}
+
+		if (componentItems)
+		{
+			itemComponents = Arrays.copyOf(probed, found);
+		}
+
+		if (isResolved())
+		{
+			log.debug("Found Doom loot at container {} with {} items and {} item components", container, bestItems, itemComponents.length);
+			return true;
+		}
+		return false;
+	}
+
+	private void collectItems()
+	{
+		seen.clear();
+		size = 0;
+		if (itemIds.length < slotItemIds.length)
+		{
+			itemIds = new int[slotItemIds.length];
+			quantities = new int[slotItemIds.length];
+		}
+
+		for (int i = 0; i < slotItemIds.length; i++)
+		{
+			final int itemId = slotItemIds[i];
+			if (isItem(itemId) && seen.add(itemId))
+			{
+				itemIds[size] = itemId;
+				quantities[size] = Math.max(1, slotQuantities[i]);
+				size++;
+			}
+		}
+	}
+
+	private static boolean isItem(final int itemId)
+	{
+		return itemId > 0 && itemId != PLACEHOLDER_ITEM_ID;
+	}
+}
@@ -0,0 +1,26 @@
+package com.doomlootlost;
+
+/**
+ * Where the player is in a Doom of Mokhaiotl encounter
+ */
+public enum EncounterState
+{
+	// Not in the boss's instance
+	OUTSIDE,
+	// In the instance, no loot offered yet
+	IN_INSTANCE,
+	// A wave's loot is on offer, to be claimed or risked on the next wave
+	LOOT_OFFERED,
+	// Descended with the loot, it is lost on death
+	RISKING,
+	// The loot was claimed or lost, nothing is tracked until the boss appears again
+	RESOLVED;
+
+	/**
+	 * @return true if loot is being held that can still be claimed or lost
+	 */
+	public boolean holdsLoot()
+	{
+		return this == LOOT_OFFERED || this == RISKING;
+	}
+}
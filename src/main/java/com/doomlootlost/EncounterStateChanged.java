@@ -0,0 +1,17 @@
+package com.doomlootlost;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Posted on the event bus whenever the encounter moves to another state
+ */
+@Getter
+@RequiredArgsConstructor
+public class EncounterStateChanged
+{
+	private final EncounterState previous;
+	private final EncounterState state;
+	// Game ticks spent in the previous state
+	private final int ticks;
+}
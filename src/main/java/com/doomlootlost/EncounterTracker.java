@@ -0,0 +1,138 @@
+package com.doomlootlost;
+
+import com.doomlootlost.collections.IntHashSet;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * State machine of a Doom of Mokhaiotl encounter, driven by game ticks, map loads and the boss being seen.
+ * The encounter only ends on a map load that leaves every region the boss was seen in, so lag or idling can't end it.
+ */
+@RequiredArgsConstructor
+class EncounterTracker
+{
+	/**
+	 * Told about every transition, after the tracker entered the new state
+	 */
+	@FunctionalInterface
+	interface Listener
+	{
+		/**
+		 * @param ticks game ticks spent in the previous state
+		 */
+		void transitioned(EncounterState previous, EncounterState state, int ticks);
+	}
+
+	private final Listener listener;
+
+	@Getter
+	private EncounterState state = EncounterState.OUTSIDE;
+	// Tick the encounter entered its state on
+	private int stateTick;
+	// Regions of the map the boss has been seen in during this encounter, leaving them all ends it
+	private final IntHashSet doomRegionIds = new IntHashSet();
+	// Set when a new map is loaded, the regions are only checked then
+	private boolean mapChanged;
+
+	/**
+	 * Move the encounter to another state
+	 */
+	void transition(final EncounterState state, final int tick)
+	{
+		final EncounterState previous = this.state;
+		if (state == previous)
+		{
+			return;
+		}
+
+		this.state = state;
+		if (state == EncounterState.OUTSIDE)
+		{
+			// The next encounter may be in another instance
+			doomRegionIds.clear();
+		}
+
+		listener.transitioned(previous, state, tick - stateTick);
+		stateTick = tick;
+	}
+
+	/**
+	 * The boss is in the loaded map, which starts a new encounter unless one is going on
+	 */
+	void bossSeen(final int[] regions, final int tick)
+	{
+		if (state == EncounterState.OUTSIDE || state == EncounterState.RESOLVED)
+		{
+			transition(EncounterState.IN_INSTANCE, tick);
+		}
+
+		// Deeper waves may take place in other regions, seeing the boss there keeps the encounter going
+		if (regions != null)
+		{
+			for (int region : regions)
+			{
+				doomRegionIds.add(region);
+			}
+		}
+	}
+
+	/**
+	 * A new map is being loaded, the next tick checks whether it is still the boss's
+	 */
+	void mapLoaded()
+	{
+		mapChanged = true;
+	}
+
+	/**
+	 * @param bossPresent true if the boss is in the loaded map
+	 * @param regions regions of the loaded map
+	 */
+	void tick(final boolean bossPresent, final int[] regions, final int tick)
+	{
+		switch (state)
+		{
+			case OUTSIDE:
+				// The spawn may have been missed, such as when the plugin was turned on in the instance
+				if (bossPresent)
+				{
+					bossSeen(regions, tick);
+				}
+				break;
+			default:
+				if (mapChanged)
+				{
+					if (bossPresent)
+					{
+						bossSeen(regions, tick);
+					}
+					else if (!isInDoomRegion(regions))
+					{
+						transition(EncounterState.OUTSIDE, tick);
+					}
+				}
+				break;
+		}
+		mapChanged = false;
+	}
+
+	/**
+	 * @return true if the map includes a region the boss has been seen in
+	 */
+	boolean isInDoomRegion(final int[] regions)
+	{
+		if (regions == null)
+		{
+			return false;
+		}
+
+		for (int region : regions)
+		{
+			if (doomRegionIds.contains(region))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
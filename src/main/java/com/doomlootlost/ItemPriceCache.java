@@ -0,0 +1,108 @@
+package com.doomlootlost;
+
+import com.doomlootlost.collections.IntLongMap;
+import com.doomlootlost.data.LossAggregates;
+import com.doomlootlost.localstorage.ItemDictionary;
+import com.doomlootlost.localstorage.LootLostWriter;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import net.runelite.client.game.ItemManager;
+
+/**
+ * Current prices of the items in risked loot, looked up once per item and kept for a while.
+ * Lets the value of everything lost be shown at today's prices by repricing the lost item totals, rather than every record.
+ * Prices can only be looked up on the client thread, which {@link #refresh} runs on, the panel reads the value it left.
+ */
+@Singleton
+public class ItemPriceCache
+{
+	// The client refreshes its price list about this often
+	private static final long PRICE_TTL = 30 * 60 * 1000L;
+
+	private final ItemManager itemManager;
+	private final ItemDictionary itemDictionary;
+
+	private final IntLongMap prices = new IntLongMap();
+	// When each price was looked up, epoch millis
+	private final IntLongMap pricedAt = new IntLongMap();
+
+	// Value of the lost items at the last refresh
+	private volatile long currentValue;
+	// When the value was last refreshed, epoch millis
+	private long refreshedAt;
+
+	@Inject
+	public ItemPriceCache(final ItemManager itemManager, final LootLostWriter writer)
+	{
+		this.itemManager = itemManager;
+		this.itemDictionary = writer.getItemDictionary();
+	}
+
+	/**
+	 * Must be called on the client thread
+	 *
+	 * @return the current price of the item, looked up again once the cached one is older than {@link #PRICE_TTL}
+	 */
+	public synchronized long getPrice(final int itemId)
+	{
+		final long now = System.currentTimeMillis();
+		if (pricedAt.containsKey(itemId) && now - pricedAt.get(itemId) < PRICE_TTL)
+		{
+			return prices.get(itemId);
+		}
+
+		// Notes are priced as the item they are a note of
+		final ItemDictionary.ItemDefinition definition = itemDictionary.get(itemId);
+		final int priceId = definition == null || definition.getPriceId() == -1 ? itemId : definition.getPriceId();
+		final long price = itemManager.getItemPrice(priceId);
+		prices.put(itemId, price);
+		pricedAt.put(itemId, now);
+		return price;
+	}
+
+	/**
+	 * Reprice the lost items, must be called on the client thread
+	 */
+	public void refresh(final List<LossAggregates.ItemTotal> items)
+	{
+		long value = 0;
+		for (LossAggregates.ItemTotal item : items)
+		{
+			value += getPrice(item.getId()) * item.getQuantity();
+		}
+
+		synchronized (this)
+		{
+			refreshedAt = System.currentTimeMillis();
+		}
+		currentValue = value;
+	}
+
+	/**
+	 * @return true if prices used by the last refresh may have changed since
+	 */
+	public synchronized boolean isStale()
+	{
+		return System.currentTimeMillis() - refreshedAt >= PRICE_TTL;
+	}
+
+	/**
+	 * @return the value of the lost items at the prices of the last refresh, safe to call from any thread
+	 */
+	public long getCurrentValue()
+	{
+		return currentValue;
+	}
+
+	/**
+	 * Look every price up again when next needed
+	 */
+	public synchronized void invalidate()
+	{
+		prices.clear();
+		pricedAt.clear();
+		refreshedAt = 0;
+		currentValue = 0;
+	}
+}
@@ -0,0 +1,91 @@
+package com.doomlootlost;
+
+import net.runelite.api.MenuAction;
+
+/**
+ * Decides whether a menu click claims or risks the offered loot, without allocating.
+ * The menu action rules out most clicks, the option and target text is only matched for what is left.
+ */
+final class MenuClickClassifier
+{
+	enum Click
+	{
+		CLAIM,
+		RISK,
+		NONE
+	}
+
+	// Interface group of the Doom loot interface
+	static final int LOOT_GROUP_ID = 919;
+
+	private MenuClickClassifier()
+	{
+	}
+
+	/**
+	 * @param widgetId packed widget id of the clicked component, param1 of the menu entry
+	 */
+	static Click classify(final MenuAction action, final int widgetId, final String option, final String target)
+	{
+		if (action == null)
+		{
+			return Click.NONE;
+		}
+
+		switch (action)
+		{
+			// "Click here to continue" on dialogue neither claims nor risks anything
+			case WIDGET_CONTINUE:
+			case WALK:
+			case CANCEL:
+				return Click.NONE;
+			case CC_OP:
+			case CC_OP_LOW_PRIORITY:
+				// Buttons on the loot interface are named by their option alone
+				if (widgetId >>> 16 == LOOT_GROUP_ID)
+				{
+					return classifyText(option, null);
+				}
+				break;
+			default:
+				break;
+		}
+
+		return classifyText(option, target);
+	}
+
+	private static Click classifyText(final String option, final String target)
+	{
+		if (containsIgnoreCase(option, "claim") || containsIgnoreCase(target, "claim"))
+		{
+			return Click.CLAIM;
+		}
+		if (containsIgnoreCase(option, "descend") || containsIgnoreCase(target, "descend") || containsIgnoreCase(option, "risk"))
+		{
+			return Click.RISK;
+		}
+		return Click.NONE;
+	}
+
+	/**
+	 * @param needle lower case
+	 */
+	static boolean containsIgnoreCase(final String text, final String needle)
+	{
+		if (text == null)
+		{
+			return false;
+		}
+
+		final char first = needle.charAt(0);
+		final int last = text.length() - needle.length();
+		for (int i = 0; i <= last; i++)
+		{
+			if (Character.toLowerCase(text.charAt(i)) == first && text.regionMatches(true, i, needle, 0, needle.length()))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
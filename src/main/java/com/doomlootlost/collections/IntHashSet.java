@@ -0,0 +1,98 @@
+package com.doomlootlost.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing set of ints, without boxing them.
+ * Values are kept in insertion order and can't be removed individually, {@link #toSortedArray()} lists them in value order.
+ */
+public class IntHashSet
+{
+    private int[] table;
+    private int[] values;
+    private int size;
+
+    public IntHashSet()
+    {
+        this(IntTables.DEFAULT_CAPACITY);
+    }
+
+    public IntHashSet(final int capacity)
+    {
+        table = new int[IntTables.tableLength(capacity)];
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean contains(final int value)
+    {
+        return table[IntTables.find(table, values, value)] != 0;
+    }
+
+    /**
+     * @return true if the value wasn't already in the set
+     */
+    public boolean add(final int value)
+    {
+        int slot = IntTables.find(table, values, value);
+        if (table[slot] != 0)
+        {
+            return false;
+        }
+
+        if (size == values.length)
+        {
+            values = Arrays.copyOf(values, size * 2);
+            if (values.length * 2 > table.length)
+            {
+                table = IntTables.rehash(values, size, IntTables.tableLength(values.length));
+                slot = IntTables.find(table, values, value);
+            }
+        }
+
+        values[size] = value;
+        table[slot] = ++size;
+        return true;
+    }
+
+    /**
+     * @return the i-th value in insertion order
+     */
+    public int get(final int i)
+    {
+        return values[i];
+    }
+
+    /**
+     * @return the values in insertion order
+     */
+    public int[] toArray()
+    {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public int[] toSortedArray()
+    {
+        final int[] sorted = toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+}
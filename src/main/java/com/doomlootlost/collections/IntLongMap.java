@@ -0,0 +1,135 @@
+package com.doomlootlost.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map of int keys to long values, without boxing either.
+ * Entries are kept in insertion order and can't be removed individually.
+ */
+public class IntLongMap
+{
+    private int[] table;
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    public IntLongMap()
+    {
+        this(IntTables.DEFAULT_CAPACITY);
+    }
+
+    public IntLongMap(final int capacity)
+    {
+        table = new int[IntTables.tableLength(capacity)];
+        keys = new int[Math.max(capacity, 1)];
+        values = new long[keys.length];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean containsKey(final int key)
+    {
+        return table[IntTables.find(table, keys, key)] != 0;
+    }
+
+    /**
+     * @return the value of key, or 0 if it isn't mapped
+     */
+    public long get(final int key)
+    {
+        return getOrDefault(key, 0L);
+    }
+
+    public long getOrDefault(final int key, final long defaultValue)
+    {
+        final int index = table[IntTables.find(table, keys, key)];
+        return index == 0 ? defaultValue : values[index - 1];
+    }
+
+    public void put(final int key, final long value)
+    {
+        // The index has to be found before values is read, adding the key may grow it
+        final int index = indexFor(key);
+        values[index] = value;
+    }
+
+    /**
+     * @return the value of key after adding delta to it, starting from 0 if it wasn't mapped
+     */
+    public long addTo(final int key, final long delta)
+    {
+        final int index = indexFor(key);
+        return values[index] += delta;
+    }
+
+    /**
+     * @return the key of the i-th entry in insertion order
+     */
+    public int keyAt(final int i)
+    {
+        return keys[i];
+    }
+
+    /**
+     * @return the value of the i-th entry in insertion order
+     */
+    public long valueAt(final int i)
+    {
+        return values[i];
+    }
+
+    /**
+     * @return the keys ordered by their value, highest first and ties in insertion order
+     */
+    public int[] keysByValue()
+    {
+        final int[] order = IntTables.orderDescending(values, size);
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = keys[order[i]];
+        }
+        return order;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, 0, size, 0L);
+        size = 0;
+    }
+
+    /**
+     * @return the entry index of key, adding it with a value of 0 if it isn't mapped
+     */
+    private int indexFor(final int key)
+    {
+        int slot = IntTables.find(table, keys, key);
+        if (table[slot] != 0)
+        {
+            return table[slot] - 1;
+        }
+
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            if (keys.length * 2 > table.length)
+            {
+                table = IntTables.rehash(keys, size, IntTables.tableLength(keys.length));
+                slot = IntTables.find(table, keys, key);
+            }
+        }
+
+        keys[size] = key;
+        table[slot] = ++size;
+        return size - 1;
+    }
+}
@@ -0,0 +1,105 @@
+package com.doomlootlost.collections;
+
+/**
+ * Hashing and ordering shared by the open addressing int collections.
+ * Each collection keeps its entries densely in insertion order and a power of two table of entry index + 1, 0 marking a free slot.
+ */
+final class IntTables
+{
+    static final int DEFAULT_CAPACITY = 16;
+
+    private IntTables()
+    {
+    }
+
+    /**
+     * @return a well spread hash of key, item ids are small and clustered
+     */
+    static int mix(final int key)
+    {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return a table length that holds capacity entries at most half full
+     */
+    static int tableLength(final int capacity)
+    {
+        return Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1;
+    }
+
+    /**
+     * @return the table slot holding key's entry index + 1, or the free slot it belongs in
+     */
+    static int find(final int[] table, final int[] keys, final int key)
+    {
+        final int mask = table.length - 1;
+        int slot = mix(key) & mask;
+        while (table[slot] != 0 && keys[table[slot] - 1] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return a table of the first size keys, for growing past the old one
+     */
+    static int[] rehash(final int[] keys, final int size, final int tableLength)
+    {
+        final int[] table = new int[tableLength];
+        final int mask = tableLength - 1;
+        for (int i = 0; i < size; i++)
+        {
+            int slot = mix(keys[i]) & mask;
+            while (table[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        return table;
+    }
+
+    /**
+     * @return entry indexes 0 until size ordered by rank, highest first and ties in insertion order
+     */
+    static int[] orderDescending(final long[] rank, final int size)
+    {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = i;
+        }
+
+        // Bottom up merge sort, stable without boxing the indexes for a comparator
+        int[] merged = new int[size];
+        for (int width = 1; width < size; width *= 2)
+        {
+            for (int low = 0; low < size; low += width * 2)
+            {
+                final int middle = Math.min(low + width, size);
+                final int high = Math.min(low + width * 2, size);
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++)
+                {
+                    if (left < middle && (right >= high || rank[order[left]] >= rank[order[right]]))
+                    {
+                        merged[i] = order[left++];
+                    }
+                    else
+                    {
+                        merged[i] = order[right++];
+                    }
+                }
+            }
+
+            final int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,170 @@
+package com.doomlootlost.collections;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The k highest scoring int keys seen, kept in a bounded min heap so offering a key costs O(log k).
+ * An updatable heap also follows keys whose score grows after they were first offered, such as running totals.
+ * Scores of updatable keys may only increase. A key tying with the lowest score of a full heap doesn't replace it.
+ */
+public class TopK
+{
+    private final int capacity;
+    private final int[] keys;
+    private final long[] scores;
+    private int size;
+    // Key to heap position + 1, 0 if not in the heap. Null unless updatable
+    private final IntIntMap positions;
+
+    public TopK(final int capacity, final boolean updatable)
+    {
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.scores = new long[capacity];
+        this.positions = updatable ? new IntIntMap() : null;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Offer a key with its score, or its new score if it was offered before and the heap is updatable
+     */
+    public void offer(final int key, final long score)
+    {
+        if (positions != null)
+        {
+            final int position = positions.get(key) - 1;
+            if (position >= 0)
+            {
+                scores[position] = score;
+                siftDown(position);
+                return;
+            }
+        }
+
+        if (size < capacity)
+        {
+            keys[size] = key;
+            scores[size] = score;
+            track(size);
+            siftUp(size++);
+        }
+        else if (capacity > 0 && score > scores[0])
+        {
+            if (positions != null)
+            {
+                positions.put(keys[0], 0);
+            }
+            keys[0] = key;
+            scores[0] = score;
+            track(0);
+            siftDown(0);
+        }
+    }
+
+    public boolean isFull()
+    {
+        return size == capacity;
+    }
+
+    /**
+     * @return the key with the lowest score, the one a higher score replaces once the heap is full
+     */
+    public int lowestKey()
+    {
+        if (size == 0)
+        {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    public long lowestScore()
+    {
+        if (size == 0)
+        {
+            throw new NoSuchElementException();
+        }
+        return scores[0];
+    }
+
+    /**
+     * @return the keys, highest score first
+     */
+    public int[] keys()
+    {
+        final int[] order = IntTables.orderDescending(scores, size);
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = keys[order[i]];
+        }
+        return order;
+    }
+
+    public void clear()
+    {
+        if (positions != null)
+        {
+            positions.clear();
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position)
+    {
+        while (position > 0)
+        {
+            final int parent = (position - 1) / 2;
+            if (scores[parent] <= scores[position])
+            {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position)
+    {
+        while (true)
+        {
+            final int left = position * 2 + 1;
+            if (left >= size)
+            {
+                break;
+            }
+
+            final int right = left + 1;
+            final int child = right < size && scores[right] < scores[left] ? right : left;
+            if (scores[position] <= scores[child])
+            {
+                break;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(final int a, final int b)
+    {
+        final int key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        final long score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        track(a);
+        track(b);
+    }
+
+    private void track(final int position)
+    {
+        if (positions != null)
+        {
+            positions.put(keys[position], position + 1);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.doomlootlost.data;
+
+import com.doomlootlost.collections.IntIntMap;
+import com.doomlootlost.collections.IntLongMap;
+import com.doomlootlost.collections.TopK;
+import com.doomlootlost.localstorage.LTItemEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Quantity and value lost per item over a risked loot history, kept up to date one loss at a time.
+ * The items with the most value lost are followed in a bounded heap as their totals grow, readers get them as an immutable
+ * ranking so showing it costs neither a sort nor depends on the number of items ever lost.
+ */
+public class LossAggregates
+{
+    // Length of the most lost items ranking
+    public static final int MOST_LOST_SIZE = 25;
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ItemTotal
+    {
+        private final int id;
+        private final String name;
+        private final long quantity;
+        // Price of the item when it was first lost
+        private final long price;
+        private final long value;
+    }
+
+    // Item id to its slot in ids and names, in the order items were first lost
+    private final IntIntMap slots = new IntIntMap();
+    private int[] ids = new int[16];
+    private String[] names = new String[16];
+    private final IntLongMap quantities = new IntLongMap();
+    private final IntLongMap prices = new IntLongMap();
+    private final IntLongMap values = new IntLongMap();
+    // Items with the most value lost, followed as their totals grow
+    private final TopK mostLostItems = new TopK(MOST_LOST_SIZE, true);
+
+    // Up to MOST_LOST_SIZE items with the most value lost, most first, replaced on every change
+    @Getter
+    private volatile List<ItemTotal> mostLost = Collections.emptyList();
+
+    /**
+     * @return aggregates holding the item totals, as listed by {@link #getItems()}
+     */
+    public static LossAggregates of(final List<ItemTotal> items)
+    {
+        final LossAggregates aggregates = new LossAggregates();
+        for (ItemTotal item : items)
+        {
+            aggregates.addItem(item.id, item.name, 0, item.price);
+            aggregates.quantities.put(item.id, item.quantity);
+            aggregates.values.put(item.id, item.value);
+            aggregates.mostLostItems.offer(item.id, item.value);
+        }
+        aggregates.publish();
+        return aggregates;
+    }
+
+    /**
+     * Add the items of a record to the totals if it was lost
+     */
+    public synchronized void add(final RiskedLootRecord record)
+    {
+        if (addItems(record))
+        {
+            publish();
+        }
+    }
+
+    private synchronized boolean addItems(final RiskedLootRecord record)
+    {
+        if (!record.isWasLost() || record.getItems() == null)
+        {
+            return false;
+        }
+
+        for (LTItemEntry item : record.getItems())
+        {
+            addItem(item.getId(), item.getName(), item.getQuantity(), item.getPrice());
+        }
+        return true;
+    }
+
+    private synchronized void addItem(final int id, final String name, final int quantity, final long price)
+    {
+        if (!slots.containsKey(id))
+        {
+            final int slot = slots.size();
+            if (slot == names.length)
+            {
+                ids = Arrays.copyOf(ids, slot * 2);
+                names = Arrays.copyOf(names, slot * 2);
+            }
+            ids[slot] = id;
+            names[slot] = name;
+            slots.put(id, slot);
+            prices.put(id, price);
+        }
+
+        quantities.addTo(id, quantity);
+        mostLostItems.offer(id, values.addTo(id, price * quantity));
+    }
+
+    /**
+     * @return every item lost, in the order they were first lost
+     */
+    public synchronized List<ItemTotal> getItems()
+    {
+        final List<ItemTotal> items = new ArrayList<>(slots.size());
+        for (int slot = 0; slot < slots.size(); slot++)
+        {
+            items.add(total(ids[slot]));
+        }
+        return items;
+    }
+
+    private ItemTotal total(final int id)
+    {
+        return new ItemTotal(id, names[slots.get(id)], quantities.get(id), prices.get(id), values.get(id));
+    }
+
+    private synchronized void publish()
+    {
+        final int[] ranked = mostLostItems.keys();
+        final List<ItemTotal> items = new ArrayList<>(ranked.length);
+        for (int id : ranked)
+        {
+            items.add(total(id));
+        }
+        mostLost = Collections.unmodifiableList(items);
+    }
+}
@@ -0,0 +1,100 @@
+package com.doomlootlost.data;
+
+import com.doomlootlost.collections.TopK;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rankings of single records over a risked loot history, the most valuable losses and the deepest waves reached.
+ * Each is a bounded heap of {@link #RANKING_SIZE} records, adding a record costs O(log K) and reading a ranking O(1).
+ */
+public class LossRankings
+{
+    // Length of the rankings
+    public static final int RANKING_SIZE = 10;
+
+    /**
+     * The highest scoring records offered, the heap ranks slots of the records array
+     */
+    private static class Ranking
+    {
+        private final TopK top = new TopK(RANKING_SIZE, false);
+        private final RiskedLootRecord[] records = new RiskedLootRecord[RANKING_SIZE];
+        // Highest score first, replaced whenever a record makes it in
+        private volatile List<RiskedLootRecord> ranked = Collections.emptyList();
+
+        boolean accepts(final long score)
+        {
+            return !top.isFull() || score > top.lowestScore();
+        }
+
+        void offer(final RiskedLootRecord record, final long score)
+        {
+            if (!accepts(score))
+            {
+                return;
+            }
+
+            // A full heap replaces its lowest key with the new one, the record takes over its slot
+            final int slot = top.isFull() ? top.lowestKey() : top.size();
+            records[slot] = record;
+            top.offer(slot, score);
+
+            final int[] slots = top.keys();
+            final List<RiskedLootRecord> list = new ArrayList<>(slots.length);
+            for (int i : slots)
+            {
+                list.add(records[i]);
+            }
+            ranked = Collections.unmodifiableList(list);
+        }
+    }
+
+    private final Ranking mostValuableLosses = new Ranking();
+    private final Ranking deepestWaves = new Ranking();
+
+    /**
+     * @return rankings holding the records of earlier rankings, as listed by their getters
+     */
+    public static LossRankings of(final List<RiskedLootRecord> mostValuableLosses, final List<RiskedLootRecord> deepestWaves)
+    {
+        final LossRankings rankings = new LossRankings();
+        mostValuableLosses.forEach(record -> rankings.mostValuableLosses.offer(record, record.getTotalValue()));
+        deepestWaves.forEach(record -> rankings.deepestWaves.offer(record, record.getWave()));
+        return rankings;
+    }
+
+    /**
+     * Rank a record if it is valid
+     */
+    public synchronized void add(final RiskedLootRecord record)
+    {
+        if (!record.isValid())
+        {
+            return;
+        }
+
+        if (record.isWasLost())
+        {
+            mostValuableLosses.offer(record, record.getTotalValue());
+        }
+        deepestWaves.offer(record, record.getWave());
+    }
+
+    /**
+     * @return up to {@link #RANKING_SIZE} lost records, most valuable first
+     */
+    public List<RiskedLootRecord> getMostValuableLosses()
+    {
+        return mostValuableLosses.ranked;
+    }
+
+    /**
+     * @return up to {@link #RANKING_SIZE} records that ended at the deepest waves, deepest first
+     */
+    public List<RiskedLootRecord> getDeepestWaves()
+    {
+        return deepestWaves.ranked;
+    }
+}
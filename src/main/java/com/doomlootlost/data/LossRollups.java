@@ -0,0 +1,195 @@
+package com.doomlootlost.data;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Deaths and risked loot outcomes rolled up per day, week and month, so questions over long ranges are answered from a few
+ * hundred buckets rather than by reading the log. Buckets start at midnight UTC, when the game's day starts, weeks on Monday.
+ * The zone is fixed so checkpointed buckets don't change meaning when the system time zone does.
+ */
+public class LossRollups
+{
+    public static final ZoneId ZONE = ZoneOffset.UTC;
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Period
+    {
+        DAY("Daily"),
+        WEEK("Weekly"),
+        MONTH("Monthly");
+
+        private final String name;
+
+        /**
+         * @return epoch millis of the start of the period the timestamp falls in
+         */
+        public long start(final long timestamp)
+        {
+            LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZONE).toLocalDate();
+            switch (this)
+            {
+                case WEEK:
+                    date = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                    break;
+                case MONTH:
+                    date = date.withDayOfMonth(1);
+                    break;
+            }
+            return date.atStartOfDay(ZONE).toInstant().toEpochMilli();
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket
+    {
+        // Epoch millis the bucket starts at
+        private long start;
+        // Deaths to the boss, with or without loot at risk
+        private int deaths;
+        private int claims;
+        // Deaths with loot at risk
+        private int losses;
+        private long valueClaimed;
+        private long valueLost;
+        private int highestWave;
+
+        private Bucket copy()
+        {
+            return new Bucket(start, deaths, claims, losses, valueClaimed, valueLost, highestWave);
+        }
+    }
+
+    // Ordered by start
+    private List<Bucket> daily = new ArrayList<>();
+    private List<Bucket> weekly = new ArrayList<>();
+    private List<Bucket> monthly = new ArrayList<>();
+
+    /**
+     * Count a record in the bucket of every period it falls in
+     */
+    public synchronized void add(final RiskedLootRecord record)
+    {
+        final long timestamp = record.getTimestamp().getTime();
+        for (Period period : Period.values())
+        {
+            final Bucket bucket = bucketFor(bucketsOf(period), period.start(timestamp));
+            if (record.isWasLost())
+            {
+                bucket.losses++;
+                bucket.valueLost += record.getTotalValue();
+            }
+            else
+            {
+                bucket.claims++;
+                bucket.valueClaimed += record.getTotalValue();
+            }
+            bucket.highestWave = Math.max(bucket.highestWave, record.getWave());
+        }
+    }
+
+    /**
+     * Count a death at the epoch millis timestamp in the bucket of every period it falls in
+     */
+    public synchronized void addDeath(final long timestamp)
+    {
+        for (Period period : Period.values())
+        {
+            bucketFor(bucketsOf(period), period.start(timestamp)).deaths++;
+        }
+    }
+
+    /**
+     * @return copies of the buckets of the period starting between from and to epoch millis, inclusive, oldest first
+     */
+    public synchronized List<Bucket> getBuckets(final Period period, final long from, final long to)
+    {
+        final List<Bucket> buckets = bucketsOf(period);
+        final List<Bucket> range = new ArrayList<>();
+        for (int i = search(buckets, from); i < buckets.size() && buckets.get(i).start <= to; i++)
+        {
+            range.add(buckets.get(i).copy());
+        }
+        return range;
+    }
+
+    public List<Bucket> getBuckets(final Period period)
+    {
+        return getBuckets(period, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private List<Bucket> bucketsOf(final Period period)
+    {
+        switch (period)
+        {
+            case DAY:
+                return daily;
+            case WEEK:
+                return weekly;
+            default:
+                return monthly;
+        }
+    }
+
+    private static Bucket bucketFor(final List<Bucket> buckets, final long start)
+    {
+        // Records nearly always arrive in the order they happened, so the bucket is usually the last one
+        if (!buckets.isEmpty() && buckets.get(buckets.size() - 1).start == start)
+        {
+            return buckets.get(buckets.size() - 1);
+        }
+
+        final int index = search(buckets, start);
+        if (index < buckets.size() && buckets.get(index).start == start)
+        {
+            return buckets.get(index);
+        }
+
+        final Bucket bucket = new Bucket();
+        bucket.start = start;
+        buckets.add(index, bucket);
+        return bucket;
+    }
+
+    /**
+     * @return index of the first bucket starting at or after start
+     */
+    private static int search(final List<Bucket> buckets, final long start)
+    {
+        int low = 0;
+        int high = buckets.size();
+        while (low < high)
+        {
+            final int middle = (low + high) >>> 1;
+            if (buckets.get(middle).start < start)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
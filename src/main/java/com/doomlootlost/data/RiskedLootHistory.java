@@ -0,0 +1,23 @@
+package com.doomlootlost.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Everything derived from the risked loot log of a player, read from the log as one consistent view.
+ * The records themselves are left in the log, only what the plugin shows of them is loaded.
+ */
+@Data
+@AllArgsConstructor
+public class RiskedLootHistory
+{
+    private RiskedLootTotals totals;
+    private LossRollups rollups;
+    private LossAggregates aggregates;
+    private WaveStatistics waves;
+    private LossRankings rankings;
+    // Number of records the writer had been given when the history was read, any given after are not part of it
+    private long appendedRecords;
+    // The same for deaths, which are only part of the rollups
+    private long appendedDeaths;
+}
@@ -22,4 +22,36 @@ public class RiskedLootRecord
     private long totalValue;
 	@Getter
     private boolean wasLost; // true if player died and lost this loot
+
+    /**
+     * Check the record is complete enough to be shown and counted in the statistics
+     */
+    public boolean isValid()
+    {
+        if (items == null || items.isEmpty())
+        {
+            return false;
+        }
+
+        if (timestamp == null)
+        {
+            return false;
+        }
+
+        if (wave <= 0)
+        {
+            return false;
+        }
+
+        // Validate each item in the record
+        for (LTItemEntry item : items)
+        {
+            if (item == null || !item.isValid())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
 }
@@ -0,0 +1,314 @@
+package com.doomlootlost.data;
+
+import com.doomlootlost.localstorage.LTItemEntry;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Risked loot records held column by column rather than as objects.
+ * Record fields are kept in parallel arrays and the items of every record in flat arrays, record i owning the items from
+ * {@code itemOffsets[i]} until {@code itemOffsets[i + 1]}. Scans for statistics walk primitive arrays and a large history
+ * costs a handful of objects instead of several per record.
+ * <p>
+ * The store is written by one thread and read through {@link #snapshot()}s, which any thread can use without locking.
+ * Columns are only ever appended to, and grown by copying, so a snapshot keeps seeing the records it was taken with.
+ */
+public class RiskedLootStore
+{
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int ITEMS_PER_RECORD = 8;
+
+    private long[] timestamps;
+    private int[] waves;
+    private long[] totalValues;
+    // Bit i is set if record i was lost
+    private long[] lost;
+    private int[] itemOffsets;
+    private int size;
+
+    private int[] itemIds;
+    private int[] quantities;
+    private long[] prices;
+    // Names are shared between items, so this costs a reference per item rather than a string
+    private String[] itemNames;
+    private int itemCount;
+
+    // Bumped by every change, snapshots of the same version are the same
+    private long version;
+    private Snapshot snapshot;
+
+    public RiskedLootStore()
+    {
+        allocate();
+    }
+
+    private void allocate()
+    {
+        timestamps = new long[DEFAULT_CAPACITY];
+        waves = new int[DEFAULT_CAPACITY];
+        totalValues = new long[DEFAULT_CAPACITY];
+        lost = new long[DEFAULT_CAPACITY / Long.SIZE];
+        itemOffsets = new int[DEFAULT_CAPACITY + 1];
+        itemIds = new int[DEFAULT_CAPACITY * ITEMS_PER_RECORD];
+        quantities = new int[DEFAULT_CAPACITY * ITEMS_PER_RECORD];
+        prices = new long[DEFAULT_CAPACITY * ITEMS_PER_RECORD];
+        itemNames = new String[DEFAULT_CAPACITY * ITEMS_PER_RECORD];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Append a record, it is copied into the store and not referenced by it afterwards
+     */
+    public void add(final RiskedLootRecord record)
+    {
+        if (size == timestamps.length)
+        {
+            final int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            waves = Arrays.copyOf(waves, capacity);
+            totalValues = Arrays.copyOf(totalValues, capacity);
+            lost = Arrays.copyOf(lost, capacity / Long.SIZE);
+            itemOffsets = Arrays.copyOf(itemOffsets, capacity + 1);
+        }
+
+        final List<LTItemEntry> items = record.getItems() == null ? Collections.emptyList() : record.getItems();
+        if (itemCount + items.size() > itemIds.length)
+        {
+            final int capacity = Math.max(itemIds.length * 2, itemCount + items.size());
+            itemIds = Arrays.copyOf(itemIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            itemNames = Arrays.copyOf(itemNames, capacity);
+        }
+
+        for (LTItemEntry item : items)
+        {
+            itemIds[itemCount] = item.getId();
+            quantities[itemCount] = item.getQuantity();
+            prices[itemCount] = item.getPrice();
+            itemNames[itemCount] = item.getName();
+            itemCount++;
+        }
+
+        timestamps[size] = record.getTimestamp() == null ? 0L : record.getTimestamp().getTime();
+        waves[size] = record.getWave();
+        totalValues[size] = record.getTotalValue();
+        if (record.isWasLost())
+        {
+            lost[size / Long.SIZE] |= 1L << size;
+        }
+        itemOffsets[size + 1] = itemCount;
+        size++;
+        version++;
+    }
+
+    public void addAll(final Iterable<RiskedLootRecord> records)
+    {
+        for (RiskedLootRecord record : records)
+        {
+            add(record);
+        }
+    }
+
+    public void clear()
+    {
+        // Fresh columns, snapshots taken before still hold the old ones
+        allocate();
+        size = 0;
+        itemCount = 0;
+        version++;
+    }
+
+    /**
+     * @return an immutable view of the records in the store now, taking one doesn't copy any records
+     */
+    public Snapshot snapshot()
+    {
+        if (snapshot == null || snapshot.version != version)
+        {
+            snapshot = new Snapshot(this);
+        }
+        return snapshot;
+    }
+
+    /**
+     * The records of a store at one version
+     */
+    public static class Snapshot
+    {
+        private static final Snapshot EMPTY = new RiskedLootStore().snapshot();
+
+        private final long version;
+        private final int size;
+        private final long[] timestamps;
+        private final int[] waves;
+        private final long[] totalValues;
+        private final long[] lost;
+        private final int[] itemOffsets;
+        private final int[] itemIds;
+        private final int[] quantities;
+        private final long[] prices;
+        private final String[] itemNames;
+
+        private Snapshot(final RiskedLootStore store)
+        {
+            version = store.version;
+            size = store.size;
+            timestamps = store.timestamps;
+            waves = store.waves;
+            totalValues = store.totalValues;
+            lost = store.lost;
+            itemOffsets = store.itemOffsets;
+            itemIds = store.itemIds;
+            quantities = store.quantities;
+            prices = store.prices;
+            itemNames = store.itemNames;
+        }
+
+        public static Snapshot empty()
+        {
+            return EMPTY;
+        }
+
+        /**
+         * @return the version of the store the snapshot was taken at, readers can skip recomputing anything derived from an unchanged version
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        public long getTimestamp(final int record)
+        {
+            return timestamps[checkRecord(record)];
+        }
+
+        public int getWave(final int record)
+        {
+            return waves[checkRecord(record)];
+        }
+
+        public long getTotalValue(final int record)
+        {
+            return totalValues[checkRecord(record)];
+        }
+
+        public boolean isLost(final int record)
+        {
+            return (lost[checkRecord(record) / Long.SIZE] & (1L << record)) != 0;
+        }
+
+        /**
+         * @return the index of the record's first item in the flat item columns
+         */
+        public int getItemStart(final int record)
+        {
+            return itemOffsets[checkRecord(record)];
+        }
+
+        /**
+         * @return the index just past the record's last item in the flat item columns
+         */
+        public int getItemEnd(final int record)
+        {
+            return itemOffsets[checkRecord(record) + 1];
+        }
+
+        public int getItemId(final int item)
+        {
+            return itemIds[item];
+        }
+
+        public int getQuantity(final int item)
+        {
+            return quantities[item];
+        }
+
+        public long getPrice(final int item)
+        {
+            return prices[item];
+        }
+
+        public String getItemName(final int item)
+        {
+            return itemNames[item];
+        }
+
+        /**
+         * @return a copy of the record, changing it doesn't change the store
+         */
+        public RiskedLootRecord get(final int record)
+        {
+            final int start = getItemStart(record);
+            final int end = getItemEnd(record);
+            final List<LTItemEntry> items = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++)
+            {
+                items.add(new LTItemEntry(itemNames[i], itemIds[i], quantities[i], prices[i]));
+            }
+
+            return new RiskedLootRecord(items, new Date(timestamps[record]), waves[record], totalValues[record], isLost(record));
+        }
+
+        /**
+         * @return a read only list view of the snapshot, records are materialised as they are accessed
+         */
+        public List<RiskedLootRecord> asList()
+        {
+            return new RecordList();
+        }
+
+        private int checkRecord(final int record)
+        {
+            if (record < 0 || record >= size)
+            {
+                throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+            }
+            return record;
+        }
+
+        private class RecordList extends AbstractList<RiskedLootRecord> implements RandomAccess
+        {
+            @Override
+            public RiskedLootRecord get(final int index)
+            {
+                return Snapshot.this.get(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.doomlootlost.data;
+
+import lombok.Data;
+
+/**
+ * Loss statistics folded over a risked loot history
+ */
+@Data
+public class RiskedLootTotals
+{
+    private int recordCount;
+    private int lostCount;
+    private long valueLost;
+
+    public void add(final RiskedLootRecord record)
+    {
+        recordCount++;
+
+        if (record.isWasLost())
+        {
+            lostCount++;
+            valueLost += record.getTotalValue();
+        }
+    }
+}
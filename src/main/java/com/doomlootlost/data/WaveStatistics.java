@@ -0,0 +1,183 @@
+package com.doomlootlost.data;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Risk statistics per wave, kept up to date one claim or loss at a time so every query takes constant time.
+ * A record claimed at wave N survived waves 1 to N, one lost at wave N survived waves 1 to N - 1 and died in wave N.
+ * Values at risk are those of the records ending at a wave, percentiles come from a histogram of quarter octaves.
+ */
+public class WaveStatistics
+{
+    // Values below 4 get a bucket each, larger ones 4 per power of two
+    private static final int HISTOGRAM_BUCKETS = 4 * Long.SIZE;
+    private static final int DEFAULT_WAVES = 16;
+
+    /**
+     * What descending another wave is expected to bring, given the history
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Descent
+    {
+        private final int wave;
+        // Chance of surviving the wave
+        private final double survivalRate;
+        // Expected change in the value of the loot at risk, compared to claiming it now
+        private final long expectedValue;
+    }
+
+    // Indexed by wave, index 0 is unused
+    private int[] attempts = new int[DEFAULT_WAVES];
+    private int[] losses = new int[DEFAULT_WAVES];
+    private int[] claims = new int[DEFAULT_WAVES];
+    private long[] valueAtRisk = new long[DEFAULT_WAVES];
+    private int[][] histograms = new int[DEFAULT_WAVES][];
+
+    public synchronized void add(final RiskedLootRecord record)
+    {
+        final int wave = record.getWave();
+        final long value = record.getTotalValue();
+        final boolean lost = record.isWasLost();
+        if (wave <= 0)
+        {
+            return;
+        }
+
+        if (wave >= attempts.length)
+        {
+            final int capacity = Math.max(attempts.length * 2, wave + 1);
+            attempts = Arrays.copyOf(attempts, capacity);
+            losses = Arrays.copyOf(losses, capacity);
+            claims = Arrays.copyOf(claims, capacity);
+            valueAtRisk = Arrays.copyOf(valueAtRisk, capacity);
+            histograms = Arrays.copyOf(histograms, capacity);
+        }
+
+        for (int i = 1; i <= wave; i++)
+        {
+            attempts[i]++;
+        }
+
+        if (lost)
+        {
+            losses[wave]++;
+        }
+        else
+        {
+            claims[wave]++;
+        }
+
+        valueAtRisk[wave] += Math.max(0L, value);
+        if (histograms[wave] == null)
+        {
+            histograms[wave] = new int[HISTOGRAM_BUCKETS];
+        }
+        histograms[wave][bucket(value)]++;
+    }
+
+    /**
+     * @return the number of runs that took loot into the wave
+     */
+    public synchronized int getAttempts(final int wave)
+    {
+        return wave > 0 && wave < attempts.length ? attempts[wave] : 0;
+    }
+
+    public synchronized int getLosses(final int wave)
+    {
+        return wave > 0 && wave < losses.length ? losses[wave] : 0;
+    }
+
+    public synchronized int getClaims(final int wave)
+    {
+        return wave > 0 && wave < claims.length ? claims[wave] : 0;
+    }
+
+    /**
+     * @return the share of attempts at the wave that survived it, NaN if it was never attempted
+     */
+    public synchronized double getSurvivalRate(final int wave)
+    {
+        final int attempted = getAttempts(wave);
+        return attempted == 0 ? Double.NaN : 1.0 - (double) getLosses(wave) / attempted;
+    }
+
+    /**
+     * @return the mean value of the loot of runs ending at the wave, 0 if none did
+     */
+    public synchronized long getMeanValueAtRisk(final int wave)
+    {
+        final int ended = getLosses(wave) + getClaims(wave);
+        return ended == 0 ? 0L : valueAtRisk[wave] / ended;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value of the loot at the percentile of the runs ending at the wave, to within a quarter octave. 0 if none did
+     */
+    public synchronized long getValueAtRiskPercentile(final int wave, final double percentile)
+    {
+        final int ended = getLosses(wave) + getClaims(wave);
+        if (ended == 0)
+        {
+            return 0L;
+        }
+
+        final int[] histogram = histograms[wave];
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * ended));
+        long seen = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+        {
+            seen += histogram[i];
+            if (seen >= rank)
+            {
+                return lowerBound(i);
+            }
+        }
+        return lowerBound(HISTOGRAM_BUCKETS - 1);
+    }
+
+    /**
+     * @return what descending into the wave after the given one is expected to bring with the loot at risk now,
+     * null if that wave was never attempted
+     */
+    public synchronized Descent getDescent(final int wave, final long valueAtRisk)
+    {
+        final int next = wave + 1;
+        final double survivalRate = getSurvivalRate(next);
+        if (Double.isNaN(survivalRate))
+        {
+            return null;
+        }
+
+        // Runs ending a wave later carry more loot on average, that increase is what surviving the wave adds
+        final long gain = Math.max(0L, getMeanValueAtRisk(next) - getMeanValueAtRisk(wave));
+        final long expectedValue = (long) (survivalRate * (valueAtRisk + gain)) - valueAtRisk;
+        return new Descent(next, survivalRate, expectedValue);
+    }
+
+    private static int bucket(final long value)
+    {
+        if (value < 4)
+        {
+            return (int) Math.max(0L, value);
+        }
+
+        final int octave = 63 - Long.numberOfLeadingZeros(value);
+        return octave * 4 + (int) ((value >>> (octave - 2)) & 3);
+    }
+
+    private static long lowerBound(final int bucket)
+    {
+        if (bucket < 8)
+        {
+            return Math.min(bucket, 3);
+        }
+
+        final int octave = bucket / 4;
+        return (4L | (bucket & 3)) << (octave - 2);
+    }
+}
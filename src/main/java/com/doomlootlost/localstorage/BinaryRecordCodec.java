@@ -0,0 +1,244 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.RiskedLootRecord;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and decodes risked loot records in the compact binary log format.
+ * <p>
+ * A binary log starts with a header of 4 magic bytes and a version byte followed by one frame per record: a 4 byte length, the CRC32 of the payload
+ * and the payload itself, so a partially written record at the end of the log can be told apart from a corrupt one.
+ * Logs written by version 1 have no frames, the payload entries directly follow the header.
+ * The payload is a sequence of tagged entries:
+ * <ul>
+ *     <li>{@link #TAG_ITEM_NAME}: varint item id, varint length, UTF-8 name. Written the first time an item id is used in the file</li>
+ *     <li>{@link #TAG_RECORD}: varlong epoch millis, varint wave, varlong total value, lost flag byte, varint item count,
+ *     then per item a varint id, varint quantity and varlong price</li>
+ * </ul>
+ * Item names are stored once per file and referenced by id from every record. Writers may repeat a name entry to let
+ * reading start part way through the file, see {@link TimestampIndex}.
+ */
+final class BinaryRecordCodec
+{
+    static final int VERSION = 2;
+    private static final int UNFRAMED_VERSION = 1;
+    private static final byte[] MAGIC = {'D', 'L', 'L', 'B'};
+    static final int HEADER_LENGTH = MAGIC.length + 1;
+
+    private static final int FRAME_HEADER_LENGTH = Integer.BYTES * 2;
+    // Longer frames are taken to be a corrupt length rather than a record cut short
+    private static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    private static final byte TAG_ITEM_NAME = 1;
+    private static final byte TAG_RECORD = 2;
+
+    private BinaryRecordCodec()
+    {
+    }
+
+    static byte[] header()
+    {
+        final byte[] header = Arrays.copyOf(MAGIC, HEADER_LENGTH);
+        header[MAGIC.length] = VERSION;
+        return header;
+    }
+
+    /**
+     * Check for and skip over the file header
+     * @return the version of the log, or -1 if the buffer doesn't start with a supported header
+     */
+    static int readHeader(final ByteBuffer buffer)
+    {
+        if (buffer.remaining() < HEADER_LENGTH)
+        {
+            return -1;
+        }
+
+        for (byte b : MAGIC)
+        {
+            if (buffer.get() != b)
+            {
+                return -1;
+            }
+        }
+
+        final int version = buffer.get();
+        return version == UNFRAMED_VERSION || version == VERSION ? version : -1;
+    }
+
+    /**
+     * Encode a record frame, its payload prefixed by name entries for any of its items not in {@code namedIds}.
+     * Newly named ids are added to {@code namedIds}.
+     */
+    static byte[] encode(final RiskedLootRecord record, final Set<Integer> namedIds)
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        // Room for the frame header, filled in once the payload length is known
+        out.write(new byte[FRAME_HEADER_LENGTH], 0, FRAME_HEADER_LENGTH);
+
+        for (LTItemEntry item : record.getItems())
+        {
+            // Unknown names are made up again on reading, a real name may be known by then
+            if (item.getName() != null && !ItemDictionary.isUnknownName(item.getName()) && namedIds.add(item.getId()))
+            {
+                final byte[] name = item.getName().getBytes(StandardCharsets.UTF_8);
+                out.write(TAG_ITEM_NAME);
+                writeVarLong(out, item.getId());
+                writeVarLong(out, name.length);
+                out.write(name, 0, name.length);
+            }
+        }
+
+        out.write(TAG_RECORD);
+        writeVarLong(out, record.getTimestamp().getTime());
+        writeVarLong(out, record.getWave());
+        writeVarLong(out, record.getTotalValue());
+        out.write(record.isWasLost() ? 1 : 0);
+        writeVarLong(out, record.getItems().size());
+        for (LTItemEntry item : record.getItems())
+        {
+            writeVarLong(out, item.getId());
+            writeVarLong(out, item.getQuantity());
+            writeVarLong(out, item.getPrice());
+        }
+
+        final byte[] frame = out.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(frame, FRAME_HEADER_LENGTH, frame.length - FRAME_HEADER_LENGTH);
+        ByteBuffer.wrap(frame).putInt(frame.length - FRAME_HEADER_LENGTH).putInt((int) crc.getValue());
+        return frame;
+    }
+
+    /**
+     * Decode the next record from a log of the given version, consuming any item name entries before it into {@code names}.
+     * A corrupt frame is skipped over before the exception is thrown, so reading can carry on with the next one.
+     * @return the next record, or null once the buffer is exhausted
+     * @throws BufferUnderflowException if the buffer ends part way through a record
+     * @throws IllegalStateException if a record fails its checksum or an unknown entry is encountered
+     */
+    static RiskedLootRecord decode(final ByteBuffer buffer, final Map<Integer, String> names, final int version)
+    {
+        if (version == UNFRAMED_VERSION || !buffer.hasRemaining())
+        {
+            return decodePayload(buffer, names);
+        }
+
+        final int start = buffer.position();
+        if (buffer.remaining() < FRAME_HEADER_LENGTH)
+        {
+            throw new BufferUnderflowException();
+        }
+
+        final int length = buffer.getInt(start);
+        final int checksum = buffer.getInt(start + Integer.BYTES);
+        if (length <= 0 || length > MAX_FRAME_LENGTH)
+        {
+            throw new IllegalStateException("Invalid risked loot frame length " + length + " at offset " + start);
+        }
+        if (length > buffer.remaining() - FRAME_HEADER_LENGTH)
+        {
+            throw new BufferUnderflowException();
+        }
+
+        final ByteBuffer payload = buffer.duplicate();
+        payload.position(start + FRAME_HEADER_LENGTH).limit(start + FRAME_HEADER_LENGTH + length);
+        buffer.position(payload.limit());
+
+        final CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum)
+        {
+            throw new IllegalStateException("Risked loot record at offset " + start + " failed its checksum");
+        }
+
+        try
+        {
+            final RiskedLootRecord record = decodePayload(payload, names);
+            if (record != null && !payload.hasRemaining())
+            {
+                return record;
+            }
+        }
+        catch (BufferUnderflowException e)
+        {
+            // The frame is complete, so running out of payload means it was written wrong rather than cut short
+        }
+        throw new IllegalStateException("Risked loot frame at offset " + start + " does not hold exactly one record");
+    }
+
+    private static RiskedLootRecord decodePayload(final ByteBuffer buffer, final Map<Integer, String> names)
+    {
+        while (buffer.hasRemaining())
+        {
+            final byte tag = buffer.get();
+            if (tag == TAG_ITEM_NAME)
+            {
+                final int id = (int) readVarLong(buffer);
+                final byte[] name = new byte[(int) readVarLong(buffer)];
+                buffer.get(name);
+                names.put(id, new String(name, StandardCharsets.UTF_8));
+                continue;
+            }
+
+            if (tag != TAG_RECORD)
+            {
+                throw new IllegalStateException("Unknown risked loot entry tag " + tag + " at offset " + (buffer.position() - 1));
+            }
+
+            final Date timestamp = new Date(readVarLong(buffer));
+            final int wave = (int) readVarLong(buffer);
+            final long totalValue = readVarLong(buffer);
+            final boolean lost = buffer.get() != 0;
+            final int count = (int) readVarLong(buffer);
+
+            final List<LTItemEntry> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                final int id = (int) readVarLong(buffer);
+                final int quantity = (int) readVarLong(buffer);
+                final long price = readVarLong(buffer);
+                items.add(new LTItemEntry(names.get(id), id, quantity, price));
+            }
+
+            return new RiskedLootRecord(items, timestamp, wave, totalValue, lost);
+        }
+
+        return null;
+    }
+
+    static void writeVarLong(final ByteArrayOutputStream out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(final ByteBuffer buffer)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed varint at offset " + buffer.position());
+    }
+}
@@ -0,0 +1,25 @@
+package com.doomlootlost.localstorage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * How often appended records are forced from the OS cache to disk.
+ * Records that were not forced can be lost, or left partially written, if the machine goes down.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum DurabilityPolicy
+{
+    NONE("Never fsync"),
+    BATCH("Fsync per batch"),
+    RECORD("Fsync per record");
+
+    private final String displayName;
+
+    @Override
+    public String toString()
+    {
+        return displayName;
+    }
+}
@@ -0,0 +1,188 @@
+package com.doomlootlost.localstorage;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * What is known about every item seen in risked loot, by item id, stored as `items.json` in the player folder.
+ * JSON records reference their items' names by id rather than repeating them, and every loaded record shares the one name
+ * instance held here. Item ids mean the same thing on every profile, so loading a profile's dictionary adds to what is known.
+ * A folder's dictionary is written out again before a record that leaves out a name it may not hold goes to that folder,
+ * and a name that can't be found is read as {@link #unknownName(int)} rather than losing the record.
+ */
+@Slf4j
+public class ItemDictionary
+{
+    static final String FILE_NAME = "items.json";
+    private static final String UNKNOWN_NAME_PREFIX = "Unknown Item (ID: ";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemDefinition
+    {
+        private int id;
+        private String name;
+        // Item the price is looked up by, the unnoted item for notes. -1 if the composition hasn't been looked up
+        private int priceId;
+    }
+
+    private final Map<Integer, ItemDefinition> items = new ConcurrentHashMap<>();
+    // Bumped whenever an item is learnt or renamed
+    private final AtomicLong version = new AtomicLong();
+    // Version of the dictionary each folder's items.json was last written at, or is queued to be
+    private final Map<File, Long> savedVersions = new ConcurrentHashMap<>();
+
+    /**
+     * @return the name given to an item whose name is unknown
+     */
+    public static String unknownName(final int id)
+    {
+        return UNKNOWN_NAME_PREFIX + id + ")";
+    }
+
+    /**
+     * @return true if the name was made up by {@link #unknownName(int)}, it is never stored
+     */
+    static boolean isUnknownName(final String name)
+    {
+        return name.startsWith(UNKNOWN_NAME_PREFIX);
+    }
+
+    /**
+     * @return the definition of the item, or null if it has never been seen
+     */
+    public ItemDefinition get(final int id)
+    {
+        return items.get(id);
+    }
+
+    /**
+     * @return the name of the item, or null if it has never been seen
+     */
+    public String getName(final int id)
+    {
+        final ItemDefinition definition = items.get(id);
+        return definition == null ? null : definition.getName();
+    }
+
+    /**
+     * @return the name of the item, or {@link #unknownName(int)} if it has never been seen
+     */
+    String getNameOrUnknown(final int id)
+    {
+        final String name = getName(id);
+        return name == null ? unknownName(id) : name;
+    }
+
+    /**
+     * Record the name and price item looked up from an item's composition
+     */
+    public void define(final int id, final String name, final int priceId)
+    {
+        final ItemDefinition current = items.get(id);
+        if (current != null && current.getName().equals(name) && current.getPriceId() == priceId)
+        {
+            return;
+        }
+
+        items.put(id, new ItemDefinition(id, name, priceId));
+        version.incrementAndGet();
+    }
+
+    /**
+     * @return the shared instance of an item name read from a record, learning it if the item wasn't known
+     */
+    String intern(final int id, final String name)
+    {
+        final ItemDefinition current = items.get(id);
+        if (current == null)
+        {
+            if (isUnknownName(name))
+            {
+                return name;
+            }
+
+            if (items.putIfAbsent(id, new ItemDefinition(id, name, -1)) == null)
+            {
+                version.incrementAndGet();
+            }
+            return getName(id);
+        }
+
+        // Renamed since, keep the name the record was written with
+        return current.getName().equals(name) ? current.getName() : name;
+    }
+
+    /**
+     * @return true if the folder's dictionary may be missing an item known now, it is taken as saved from then on
+     * and the caller has to {@link #save} it
+     */
+    boolean takeUnsaved(final File folder)
+    {
+        final long current = version.get();
+        final Long saved = savedVersions.put(folder, current);
+        return saved == null || saved != current;
+    }
+
+    /**
+     * Add the items stored in the folder to the dictionary, items already known keep their definition
+     */
+    void load(final File folder, final Gson gson)
+    {
+        final File file = new File(folder, FILE_NAME);
+        if (!file.exists())
+        {
+            return;
+        }
+
+        try
+        {
+            final ItemDefinition[] definitions = gson.fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), ItemDefinition[].class);
+            if (definitions == null)
+            {
+                return;
+            }
+
+            for (ItemDefinition definition : definitions)
+            {
+                if (definition != null && definition.getName() != null && items.putIfAbsent(definition.getId(), definition) == null)
+                {
+                    version.incrementAndGet();
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("Unable to read item dictionary {}", file.getAbsolutePath(), e);
+        }
+    }
+
+    void save(final File folder, final Gson gson)
+    {
+        final File file = new File(folder, FILE_NAME);
+        final File tempFile = new File(folder, FILE_NAME + ".tmp");
+        try
+        {
+            Files.write(tempFile.toPath(), gson.toJson(items.values().toArray(new ItemDefinition[0])).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write item dictionary {}", file.getAbsolutePath(), e);
+            // Written again before the next record
+            savedVersions.remove(folder);
+        }
+    }
+}
@@ -37,4 +37,12 @@ public class LTItemEntry
     public int id;
     public int quantity;
     public long price;
+
+    /**
+     * Check the item is complete enough to be shown and counted in the statistics
+     */
+    public boolean isValid()
+    {
+        return name != null && !name.trim().isEmpty() && id > 0 && quantity > 0;
+    }
 }
@@ -0,0 +1,87 @@
+package com.doomlootlost.localstorage;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+/**
+ * Streams {@link LTItemEntry}s to and from JSON without going through reflection.
+ * Names are left out for items in the {@link ItemDictionary} and read back from it, read names are shared through it.
+ * The dictionary has to be saved to the folder before anything written by this adapter, so it holds every name left out.
+ */
+public class LTItemEntryAdapter extends TypeAdapter<LTItemEntry>
+{
+    private final ItemDictionary dictionary;
+
+    public LTItemEntryAdapter(final ItemDictionary dictionary)
+    {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void write(JsonWriter out, LTItemEntry value) throws IOException
+    {
+        if (value == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        if (value.getName() != null && !value.getName().equals(dictionary.getName(value.getId())) && !ItemDictionary.isUnknownName(value.getName()))
+        {
+            out.name("name").value(value.getName());
+        }
+        out.name("id").value(value.getId());
+        out.name("quantity").value(value.getQuantity());
+        out.name("price").value(value.getPrice());
+        out.endObject();
+    }
+
+    @Override
+    public LTItemEntry read(JsonReader in) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+
+        final LTItemEntry item = new LTItemEntry();
+        in.beginObject();
+        while (in.hasNext())
+        {
+            final String name = in.nextName();
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name)
+            {
+                case "name":
+                    item.setName(in.nextString());
+                    break;
+                case "id":
+                    item.setId(in.nextInt());
+                    break;
+                case "quantity":
+                    item.setQuantity(in.nextInt());
+                    break;
+                case "price":
+                    item.setPrice(in.nextLong());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        // A name missing from the dictionary doesn't make the record any less real, it is shown as unknown rather than dropped
+        item.setName(item.getName() == null ? dictionary.getNameOrUnknown(item.getId()) : dictionary.intern(item.getId(), item.getName()));
+        return item;
+    }
+}
@@ -24,20 +24,49 @@
  */
 package com.doomlootlost.localstorage;
 
+import com.doomlootlost.data.LossAggregates;
+import com.doomlootlost.data.LossRankings;
+import com.doomlootlost.data.RiskedLootHistory;
+import com.doomlootlost.data.RiskedLootRecord;
+import com.doomlootlost.data.RiskedLootTotals;
 import com.google.gson.Gson;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.http.api.RuneLiteAPI;
@@ -45,14 +74,35 @@ import net.runelite.http.api.RuneLiteAPI;
 import static net.runelite.client.RuneLite.RUNELITE_DIR;
 
 /**
- * Reads & Writes LootRecord data from `*name*.log` files located in `.runelite/doomlootlost/`.
- * Data is stored as json delimited by newlines, aka JSON Lines {@see <a href="http://jsonlines.org">http://jsonlines.org</a>}
+ * Reads & Writes LootRecord data from `risked_loot.*` files located in `.runelite/doomlootlost/*name*`.
+ * Data is stored either as json delimited by newlines, aka JSON Lines {@see <a href="http://jsonlines.org">http://jsonlines.org</a>},
+ * or in the compact binary format described by {@link BinaryRecordCodec}.
+ * <p>
+ * The log is split into segments listed by a {@link SegmentManifest}. Records are appended to the active segment, which is sealed
+ * once it grows past the segment size or gets too old. Sealed segments are compacted in the background: invalid records are dropped,
+ * the rest are sorted and re-encoded in the folder's current format and optionally deflate compressed.
+ * Switching format seals the active segment and lets compaction convert the sealed segments.
+ * Every segment has a sparse {@link TimestampIndex} beside it, so date range queries only read the part of the log they need.
  */
 @Slf4j
 @Singleton
 public class LootLostWriter
 {
     private static final File LOOT_RECORD_DIR = new File(RUNELITE_DIR, "doomlootlost");
+    private static final String SNAPSHOT_FILE_NAME = "risked_loot.snapshot";
+    // Fields a snapshot must hold to be trusted
+    private static final String[] SNAPSHOT_FIELDS = {"version", "segment", "offset", "checksum", "deathsOffset", "totals", "rollups",
+        "items", "waves", "mostValuableLosses", "deepestWaves", "names"};
+    // Epoch millis of every death to the boss, kept apart from the records as most deaths have no loot at risk
+    private static final String DEATHS_FILE_NAME = "deaths.bin";
+    private static final int SNAPSHOT_CHECKSUM_LENGTH = 4096;
+    private static final String COMPRESSED_EXTENSION = ".gz";
+    private static final long MAX_SEGMENT_AGE_MS = TimeUnit.DAYS.toMillis(30);
+    // Wait before queueing a read again when the write queue is full
+    private static final long READ_RETRY_DELAY_MS = 50;
+
+    // Holds a folder per player
+    private final File rootDirectory;
 
     // Data is stored in a folder with the players username (login name)
     @Getter
@@ -62,118 +112,1182 @@ public class LootLostWriter
     @Getter
     private String name;
 
+    // Format of the active segment in the current player folder
+    @Getter
+    private RecordFormat format = RecordFormat.BINARY;
+
+    // Format new player folders are created with, every existing folder keeps the format recorded in its manifest.
+    // Binary frames carry a length and CRC, so a torn tail is told apart from a corrupt record, JSON lines can't be
+    @Getter
+    private RecordFormat preferredFormat = RecordFormat.BINARY;
+
+    // Size in bytes the active segment is sealed at
+    @Setter
+    private long segmentSize = 1024 * 1024;
+
+    private boolean compressSealedSegments;
+
     // The default date format does not allow migrating between Java 17 and Java 20+ (in either direction)
-    // Java 20+ uses unicode character U+202f while java 17- use a normal space before the AM/PM part of the date string
-    // This date adapter will attempt to match between both variants but will always write with a space
-    public final Gson CUSTOM_GSON = RuneLiteAPI.GSON.newBuilder()
-            .registerTypeAdapter(Date.class, new LootRecordDateAdapter())
+    // Timestamps are written as epoch millis instead, the locale strings older versions wrote are still read
+    private final RecordTimestampAdapter timestampAdapter = new RecordTimestampAdapter();
+
+    // Names of the items in risked loot, JSON records reference them by id
+    @Getter
+    private final ItemDictionary itemDictionary = new ItemDictionary();
+    private final LTItemEntryAdapter itemAdapter = new LTItemEntryAdapter(itemDictionary);
+
+    // Records are bound by hand written adapters rather than reflection, they are the bulk of what is read and written
+    private final Gson customGson = RuneLiteAPI.GSON.newBuilder()
+            .registerTypeAdapter(Date.class, timestampAdapter)
+            .registerTypeAdapter(LTItemEntry.class, itemAdapter)
+            .registerTypeAdapter(RiskedLootRecord.class, new RiskedLootRecordAdapter(timestampAdapter, itemAdapter))
             .create();
 
+    private final RecordAppender appender = new RecordAppender();
+
+    // Item ids whose name has already been written to the active binary segment since the last indexed record
+    private final Set<Integer> namedIds = ConcurrentHashMap.newKeySet();
+
+    private volatile SegmentManifest manifest;
+    // One manifest per player folder, tasks still queued for a folder share it with the next login to that folder
+    private final Map<File, SegmentManifest> manifests = new HashMap<>();
+    // Bytes written or queued to the active segment, as far as appends know
+    private long activeLength;
+    // Offset of the last record of the active segment added to its index, -1 if none
+    private long lastIndexedOffset = -1;
+    // Tasks queued that change the active segment, appends don't queue a seal while any are pending
+    private final AtomicInteger pendingSegmentTasks = new AtomicInteger();
+    // Change in the length of the active segment found by the writer thread when opening or sealing it, applied by the next append
+    private final AtomicLong lengthCorrection = new AtomicLong();
+
+    // Records addRiskedLootRecord queued, tells callers which of them a loaded history includes
+    @Getter
+    private volatile long appendedRecords;
+    // Deaths addDeath queued, the same for deaths
+    @Getter
+    private volatile long appendedDeaths;
+
     @Inject
     public LootLostWriter()
     {
-        LOOT_RECORD_DIR.mkdir();
+        this(LOOT_RECORD_DIR);
+    }
+
+    /**
+     * @param rootDirectory folder the player folders are kept in
+     */
+    LootLostWriter(final File rootDirectory)
+    {
+        this.rootDirectory = rootDirectory;
+        rootDirectory.mkdir();
     }
 
-    public boolean setPlayerUsername(final String username)
+    public synchronized boolean setPlayerUsername(final String username)
     {
         if (username.equalsIgnoreCase(name))
         {
             return false;
         }
 
-        playerFolder = new File(LOOT_RECORD_DIR, username);
+        playerFolder = new File(rootDirectory, username);
         playerFolder.mkdir();
         name = username;
+
+        itemDictionary.load(playerFolder, customGson);
+
+        final boolean newManifest = !manifests.containsKey(playerFolder) && !new File(playerFolder, SegmentManifest.FILE_NAME).exists();
+        manifest = manifests.computeIfAbsent(playerFolder, folder -> SegmentManifest.load(folder, customGson));
+
+        // Manifests written before the format was recorded in them keep the format their log is in
+        format = detectFormat(playerFolder, manifest);
+        final RecordFormat folderFormat = manifest.getFormat() != null ? manifest.getFormat() : format != null ? format : preferredFormat;
+        if (format != folderFormat)
+        {
+            // A migration of this folder was interrupted
+            migrate(folderFormat);
+        }
+        else
+        {
+            openActiveSegment();
+        }
+
+        if (newManifest || manifest.getFormat() != folderFormat)
+        {
+            // Persist when the active segment was started so it can be sealed once it gets too old
+            manifest.setFormat(folderFormat);
+            saveManifest();
+        }
+
+        scheduleCompaction();
         return true;
     }
 
+    /**
+     * Set the format the current player folder stores risked loot in, migrating it if it uses a different one.
+     * Other player folders keep their own format, new ones start in the last format set.
+     */
+    public synchronized void setPreferredFormat(final RecordFormat preferredFormat)
+    {
+        this.preferredFormat = preferredFormat;
+
+        if (playerFolder != null && format != preferredFormat)
+        {
+            migrate(preferredFormat);
+        }
+    }
+
+    /**
+     * Set how often appended records are forced to disk
+     */
+    public void setDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+    {
+        appender.setDurabilityPolicy(durabilityPolicy);
+    }
+
+    /**
+     * Set whether sealed segments should be deflate compressed, existing segments are converted in the background
+     */
+    public synchronized void setCompressSealedSegments(final boolean compressSealedSegments)
+    {
+        this.compressSealedSegments = compressSealedSegments;
+
+        if (playerFolder != null)
+        {
+            scheduleCompaction();
+        }
+    }
+
+    private static RecordFormat detectFormat(final File folder, final SegmentManifest manifest)
+    {
+        final File binary = new File(folder, RecordFormat.BINARY.getFileName());
+        final File json = new File(folder, RecordFormat.JSON_LINES.getFileName());
+
+        // Both only exist if sealing one of them was interrupted, the newer one is the live log
+        if (binary.exists() && (!json.exists() || binary.lastModified() >= json.lastModified()))
+        {
+            return RecordFormat.BINARY;
+        }
+
+        if (json.exists())
+        {
+            return RecordFormat.JSON_LINES;
+        }
+
+        // The active segment was just sealed, keep the format of the segment before it
+        final List<SegmentManifest.Segment> sealed = manifest.getSealed();
+        if (!sealed.isEmpty())
+        {
+            return sealed.get(sealed.size() - 1).getFormat();
+        }
+
+        // Nothing stored yet, start straight away in the preferred format
+        return null;
+    }
+
     // ========== RISKED LOOT METHODS ==========
 
     /**
-     * Add a risked loot record to storage using JSON Lines format (like Loot-Logger)
+     * Queue a risked loot record to be appended to the active segment in the format of the current player folder.
+     * The record is written by a background thread so the caller never waits on the disk.
+     * @return a future completing with true once the record has been written, or false if it could not be saved
      */
-    public synchronized boolean addRiskedLootRecord(com.doomlootlost.data.RiskedLootRecord record)
+    public synchronized CompletableFuture<Boolean> addRiskedLootRecord(RiskedLootRecord record)
     {
         if (playerFolder == null || name == null)
         {
             log.warn("Player directory is null, cannot save risked loot record");
-            return false;
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // Names are stored once in the dictionary, which has to be in this folder before records referencing it.
+        // It is shared by every profile, so it may know names another profile's folder doesn't hold yet
+        for (LTItemEntry item : record.getItems())
+        {
+            if (item.getName() != null)
+            {
+                itemDictionary.intern(item.getId(), item.getName());
+            }
+        }
+        saveItemDictionary();
+
+        applyLengthCorrection();
+        final File file = new File(playerFolder, format.getFileName());
+        if (activeLength == 0 && format == RecordFormat.BINARY)
+        {
+            // The header is written in front of the first record
+            activeLength = BinaryRecordCodec.header().length;
+        }
+
+        // Where the record lands is only estimated here for spacing the index, the writer indexes it at its actual offset
+        final long offset = activeLength;
+        final boolean indexed = lastIndexedOffset < 0 || offset - lastIndexedOffset >= TimestampIndex.INTERVAL_BYTES;
+        final File indexFile = indexed ? TimestampIndex.fileFor(file) : null;
+        final long timestamp = record.getTimestamp().getTime();
+
+        final boolean binary = format == RecordFormat.BINARY;
+        // Reading may start at an indexed record, so a binary record there has to name its items again
+        final Set<Integer> named = !binary ? null : indexed ? new HashSet<>() : new HashSet<>(namedIds);
+        final byte[] data = binary ? BinaryRecordCodec.encode(record, named) : encodeJsonLine(record);
+        final CompletableFuture<Boolean> future = appender.append(file, data, binary ? BinaryRecordCodec.header() : null, indexFile, timestamp);
+        if (RecordAppender.isRejected(future))
+        {
+            // Nothing was queued, the log and index are as they were before this record
+            return CompletableFuture.completedFuture(false);
+        }
+
+        if (binary)
+        {
+            if (indexed)
+            {
+                namedIds.clear();
+            }
+            namedIds.addAll(named);
+            // The item names written with this record are missing from the file if it failed, write them again with the next record
+            future.thenAccept(saved ->
+            {
+                if (!saved)
+                {
+                    namedIds.clear();
+                }
+            });
+        }
+
+        appendedRecords++;
+        if (indexed)
+        {
+            lastIndexedOffset = offset;
+        }
+        activeLength += data.length;
+        if (pendingSegmentTasks.get() == 0
+            && (activeLength >= segmentSize || System.currentTimeMillis() - manifest.getActiveSince() >= MAX_SEGMENT_AGE_MS))
+        {
+            sealActiveSegment(format);
+            scheduleCompaction();
+        }
+
+        return future;
+    }
+
+    /**
+     * Save a death to the boss at the epoch millis timestamp, counted in the rollups
+     * @return a future completing with true once the death has been written, or false if it could not be saved
+     */
+    public synchronized CompletableFuture<Boolean> addDeath(final long timestamp)
+    {
+        if (playerFolder == null || name == null)
+        {
+            log.warn("Player directory is null, cannot save death");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        final byte[] data = ByteBuffer.allocate(Long.BYTES).putLong(timestamp).array();
+        final CompletableFuture<Boolean> future = appender.append(new File(playerFolder, DEATHS_FILE_NAME), data);
+        if (RecordAppender.isRejected(future))
+        {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        appendedDeaths++;
+        return future;
+    }
+
+    /**
+     * Write out every queued record, checkpoint the statistics and stop the background writer, it is restarted by the next record
+     */
+    public void shutDown()
+    {
+        queueCheckpoint();
+        appender.shutDown();
+    }
+
+    private synchronized void queueCheckpoint()
+    {
+        final LogCut cut = cut();
+        if (cut != null)
+        {
+            appender.run(() -> loadStatistics(cut));
+        }
+    }
+
+    /**
+     * Load everything derived from the risked loot log of the current player in one go, so it agrees with itself.
+     * Only the statistics snapshot and the records appended since it are read, see {@link #loadStatistics}.
+     * Records added while this runs are left out, {@link RiskedLootHistory#getAppendedRecords()} tells which ones are included.
+     * The log is read on the writer thread, callers wait for it without holding up records being added.
+     */
+    public RiskedLootHistory loadRiskedLootHistory()
+    {
+        return readOnWriterThread(cut ->
+        {
+            final RiskedLootSnapshot statistics = loadStatistics(cut);
+            // Keep the names learnt from records written before the dictionary existed
+            if (cut != null && itemDictionary.takeUnsaved(cut.folder))
+            {
+                itemDictionary.save(cut.folder, customGson);
+            }
+            return new RiskedLootHistory(statistics.getTotals(), statistics.getRollups(), LossAggregates.of(statistics.getItems()),
+                statistics.getWaves(), LossRankings.of(statistics.getMostValuableLosses(), statistics.getDeepestWaves()),
+                cut == null ? appendedRecords : cut.appendedRecords, cut == null ? appendedDeaths : cut.appendedDeaths);
+        });
+    }
+
+    /**
+     * The log of a player folder as of a point in the write queue, it holds every record queued before that point
+     */
+    @RequiredArgsConstructor
+    private static final class LogCut
+    {
+        private final File folder;
+        private final SegmentManifest manifest;
+        private final RecordFormat format;
+        // Records and deaths queued before the cut
+        private final long appendedRecords;
+        private final long appendedDeaths;
+
+        private List<SegmentManifest.Segment> segments()
+        {
+            return manifest.getSegments(format);
         }
+    }
 
-        final File file = new File(playerFolder, "risked_loot.log");
-        
-        // Convert record to JSON
-        final String dataAsString = CUSTOM_GSON.toJson(record);
+    /**
+     * @return the log of the current player as of now, null if there is no player folder
+     */
+    private synchronized LogCut cut()
+    {
+        return playerFolder == null || name == null ? null : new LogCut(playerFolder, manifest, format, appendedRecords, appendedDeaths);
+    }
 
-        // Open File in append mode and write new data (JSON Lines format)
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true)))
+    /**
+     * Run a read of the current player's log on the writer thread once every write queued before it has been made, and wait for it.
+     * Only queueing the read takes the lock, so the client thread keeps adding records while the caller waits.
+     * @param read runs on the writer thread, given null if there is no player folder
+     */
+    private <T> T readOnWriterThread(final Function<LogCut, T> read)
+    {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        while (!queueRead(read, result))
         {
-            writer.append(dataAsString);
-            writer.newLine();
+            // Only a full queue rejects the read, the writer thread works through it quickly
+            try
+            {
+                Thread.sleep(READ_RETRY_DELAY_MS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to read the risked loot log", e);
+            }
+        }
+        return result.join();
+    }
+
+    /**
+     * @return false if the write queue is full
+     */
+    private synchronized <T> boolean queueRead(final Function<LogCut, T> read, final CompletableFuture<T> result)
+    {
+        final LogCut cut = cut();
+        if (cut == null)
+        {
+            result.complete(read.apply(null));
             return true;
         }
+
+        return !RecordAppender.isRejected(appender.run(() ->
+        {
+            try
+            {
+                result.complete(read.apply(cut));
+            }
+            catch (RuntimeException e)
+            {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        }));
+    }
+
+    /**
+     * Queue writing the item dictionary to the player folder if it may be missing a name records written to it leave out
+     */
+    private void saveItemDictionary()
+    {
+        if (itemDictionary.takeUnsaved(playerFolder))
+        {
+            final File folder = playerFolder;
+            appender.run(() -> itemDictionary.save(folder, customGson));
+        }
+    }
+
+    /**
+     * Load all risked loot records for the current player
+     */
+    public Collection<RiskedLootRecord> loadRiskedLootRecords()
+    {
+        final Collection<RiskedLootRecord> data = new ArrayList<>();
+        openRiskedLootRecords().forEachRemaining(data::add);
+        return data;
+    }
+
+    /**
+     * Open a lazy reader over every risked loot record of the current player, in the order they were recorded.
+     * Records are decoded one at a time and one segment at a time from a memory mapped view of the log,
+     * so callers folding over the history never need to hold all of it in memory.
+     */
+    public Iterator<RiskedLootRecord> openRiskedLootRecords()
+    {
+        // Records still waiting in the write queue are written before the log is read
+        final LogCut cut = readOnWriterThread(Function.identity());
+        if (cut == null)
+        {
+            return RiskedLootLogReader.empty(format);
+        }
+
+        final List<SegmentManifest.Segment> segments = cut.segments();
+        return chainSegments(cut.folder, segments, new long[segments.size()], Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Open a lazy reader over the risked loot records of the current player recorded between from and to, inclusive.
+     * Segments entirely outside the range are skipped and the {@link TimestampIndex} of each remaining segment is used
+     * to start reading close to the first record in range, so only a small part of the log is decoded.
+     */
+    public Iterator<RiskedLootRecord> openRiskedLootRecords(final Date from, final Date to)
+    {
+        // Records still waiting in the write queue are written before the log is read
+        final LogCut cut = readOnWriterThread(Function.identity());
+        if (cut == null)
+        {
+            return RiskedLootLogReader.empty(format);
+        }
+
+        final long fromMillis = from.getTime();
+        final long toMillis = to.getTime();
+        final List<SegmentManifest.Segment> segments = cut.segments();
+        final TimestampIndex[] indexes = new TimestampIndex[segments.size()];
+        for (int i = 0; i < indexes.length; i++)
+        {
+            indexes[i] = TimestampIndex.load(new File(cut.folder, segments.get(i).getFileName()));
+        }
+
+        final List<SegmentManifest.Segment> selected = new ArrayList<>();
+        final List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < indexes.length; i++)
+        {
+            // Segments without an index are waiting on compaction, they are read in full
+            final TimestampIndex index = indexes[i];
+            if (index != null && index.isEmpty())
+            {
+                continue;
+            }
+
+            if (index != null && index.firstTimestamp() > toMillis)
+            {
+                break;
+            }
+
+            // Every record of this segment is older than the first one of the next
+            final TimestampIndex next = i + 1 < indexes.length ? indexes[i + 1] : null;
+            if (next != null && !next.isEmpty() && next.firstTimestamp() < fromMillis)
+            {
+                continue;
+            }
+
+            selected.add(segments.get(i));
+            offsets.add(index == null ? 0 : index.seek(fromMillis));
+        }
+
+        return chainSegments(cut.folder, selected, offsets.stream().mapToLong(Long::longValue).toArray(), fromMillis, toMillis);
+    }
+
+    /**
+     * @return an iterator reading the given segments one after another, each starting at its offset
+     */
+    private Iterator<RiskedLootRecord> chainSegments(final File folder, final List<SegmentManifest.Segment> segments, final long[] offsets,
+        final long from, final long to)
+    {
+        return new Iterator<RiskedLootRecord>()
+        {
+            private int index;
+            private RiskedLootLogReader reader;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (reader == null || !reader.hasNext())
+                {
+                    if (index >= segments.size())
+                    {
+                        return false;
+                    }
+
+                    reader = openSegment(folder, segments.get(index), offsets[index], true);
+                    if (reader != null)
+                    {
+                        reader.setRange(from, to);
+                    }
+                    index++;
+                }
+                return true;
+            }
+
+            @Override
+            public RiskedLootRecord next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return reader.next();
+            }
+        };
+    }
+
+    /**
+     * Stream every risked loot record of the current player in the order they were recorded.
+     * When parallel, sealed segments are opened read-only and decoded concurrently, the stream keeps its encounter order.
+     */
+    public Stream<RiskedLootRecord> streamRiskedLootRecords(final boolean parallel)
+    {
+        // Records still waiting in the write queue are written before the log is read
+        return streamSegments(readOnWriterThread(Function.identity()), parallel);
+    }
+
+    private Stream<RiskedLootRecord> streamSegments(final LogCut cut, final boolean parallel)
+    {
+        if (cut == null)
+        {
+            return Stream.empty();
+        }
+
+        final List<SegmentManifest.Segment> segments = cut.segments();
+        final Stream<SegmentManifest.Segment> stream = parallel ? segments.parallelStream() : segments.stream();
+        return stream
+            .map(segment -> openSegment(cut.folder, segment, 0, true))
+            .filter(Objects::nonNull)
+            .flatMap(RiskedLootLogReader::stream);
+    }
+
+    /**
+     * Open a reader over a segment positioned at offset. The active segment is always read onto the heap, it is sealed by moving it
+     * and some platforms refuse to move a file while a mapping of it is still reachable.
+     * @param mapped memory map a sealed segment rather than read it onto the heap, only when nothing is about to replace the file
+     * @return the reader, or null if the segment doesn't exist
+     */
+    private RiskedLootLogReader openSegment(final File folder, final SegmentManifest.Segment segment, final long offset, final boolean mapped)
+    {
+        final File file = new File(folder, segment.getFileName());
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            final RiskedLootLogReader reader;
+            if (segment.isCompressed())
+            {
+                reader = RiskedLootLogReader.inflate(file, segment.getFormat(), customGson, offset);
+            }
+            else if (mapped && !segment.getFileName().equals(segment.getFormat().getFileName()))
+            {
+                reader = RiskedLootLogReader.map(file, segment.getFormat(), customGson, offset);
+            }
+            else
+            {
+                reader = RiskedLootLogReader.read(file, segment.getFormat(), customGson, offset);
+            }
+            reader.setItemDictionary(itemDictionary);
+            return reader;
+        }
+        catch (IOException e)
+        {
+            log.warn("IOException for file {}: {}", file.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fold the statistics of every valid risked loot record of the current player.
+     */
+    public RiskedLootTotals loadRiskedLootTotals()
+    {
+        return readOnWriterThread(cut -> loadStatistics(cut).getTotals());
+    }
+
+    /**
+     * Bring the statistics snapshot of a player up to date, runs on the writer thread.
+     * Only the records and deaths appended since the last snapshot are read, the snapshot is validated against the segment
+     * it points into and the length of the deaths file, and rebuilt from the start if either no longer matches.
+     * The snapshot is updated whenever new records or deaths were read.
+     */
+    private RiskedLootSnapshot loadStatistics(final LogCut cut)
+    {
+        if (cut == null)
+        {
+            return new RiskedLootSnapshot();
+        }
+
+        final File folder = cut.folder;
+        final File snapshotFile = new File(folder, SNAPSHOT_FILE_NAME);
+        final File deathsFile = new File(folder, DEATHS_FILE_NAME);
+        final List<SegmentManifest.Segment> segments = cut.segments();
+
+        RiskedLootSnapshot snapshot = readSnapshot(snapshotFile);
+        int index = -1;
+        RiskedLootLogReader reader = null;
+        if (snapshot != null)
+        {
+            for (int i = 0; i < segments.size() && index < 0; i++)
+            {
+                if (segments.get(i).getSequence() == snapshot.getSegment())
+                {
+                    index = i;
+                }
+            }
+
+            reader = index < 0 ? null : openSegment(folder, segments.get(index), snapshot.getOffset(), true);
+            if (reader == null
+                || snapshot.getOffset() > reader.getLength()
+                || snapshot.getChecksum() != reader.checksum(snapshot.getOffset(), SNAPSHOT_CHECKSUM_LENGTH)
+                || snapshot.getDeathsOffset() > deathsFile.length())
+            {
+                log.info("Risked loot snapshot for {} does not match the log, rebuilding it", folder.getName());
+                snapshot = null;
+                reader = null;
+            }
+            else
+            {
+                reader.seedNames(snapshot.getNames());
+            }
+        }
+
+        final boolean rebuild = snapshot == null;
+        if (rebuild)
+        {
+            snapshot = new RiskedLootSnapshot();
+            index = 0;
+        }
+
+        final LossAggregates aggregates = LossAggregates.of(snapshot.getItems());
+        final LossRankings rankings = LossRankings.of(snapshot.getMostValuableLosses(), snapshot.getDeepestWaves());
+        int read = 0;
+        for (int i = index; i < segments.size(); i++)
+        {
+            if (reader == null)
+            {
+                reader = openSegment(folder, segments.get(i), 0, true);
+                if (reader == null)
+                {
+                    continue;
+                }
+            }
+
+            while (reader.hasNext())
+            {
+                final RiskedLootRecord record = reader.next();
+                if (record.isValid())
+                {
+                    snapshot.getTotals().add(record);
+                    snapshot.getRollups().add(record);
+                    aggregates.add(record);
+                    snapshot.getWaves().add(record);
+                    rankings.add(record);
+                }
+                read++;
+            }
+
+            if (rebuild || read > 0 || segments.get(i).getSequence() != snapshot.getSegment() || reader.getPosition() != snapshot.getOffset())
+            {
+                snapshot.setSegment(segments.get(i).getSequence());
+                snapshot.setOffset(reader.getPosition());
+                snapshot.setChecksum(reader.checksum(reader.getPosition(), SNAPSHOT_CHECKSUM_LENGTH));
+                snapshot.setNames(reader.getNames());
+            }
+            reader = null;
+        }
+
+        snapshot.setItems(aggregates.getItems());
+        snapshot.setMostValuableLosses(rankings.getMostValuableLosses());
+        snapshot.setDeepestWaves(rankings.getDeepestWaves());
+
+        final int deaths = readDeaths(deathsFile, snapshot);
+        if (rebuild || read > 0 || deaths > 0)
+        {
+            log.debug("Checkpointing risked loot statistics after reading {} records and {} deaths", read, deaths);
+            writeSnapshot(folder, snapshot);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Count the deaths after the snapshot's deaths offset in its rollups, cutting off a death that was only partly written
+     * @return the number of deaths read
+     */
+    private static int readDeaths(final File deathsFile, final RiskedLootSnapshot snapshot)
+    {
+        if (!deathsFile.exists())
+        {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(deathsFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final long length = channel.size() - channel.size() % Long.BYTES;
+            if (length != channel.size())
+            {
+                log.warn("Cutting off a partly written death from {}", deathsFile.getAbsolutePath());
+                channel.truncate(length);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) (length - snapshot.getDeathsOffset()));
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, snapshot.getDeathsOffset() + buffer.position()) < 0)
+                {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            final int deaths = buffer.remaining() / Long.BYTES;
+            while (buffer.hasRemaining())
+            {
+                snapshot.getRollups().addDeath(buffer.getLong());
+            }
+            snapshot.setDeathsOffset(length);
+            return deaths;
+        }
         catch (IOException e)
         {
-            log.warn("Failed to save risked loot record", e);
+            log.warn("IOException for file {}: {}", deathsFile.getAbsolutePath(), e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * @return the snapshot if it exists and was written by this version, otherwise null
+     */
+    private RiskedLootSnapshot readSnapshot(final File snapshotFile)
+    {
+        if (!snapshotFile.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            final String json = new String(Files.readAllBytes(snapshotFile.toPath()), StandardCharsets.UTF_8);
+            final JsonObject tree = JsonParser.parseString(json).getAsJsonObject();
+            // Gson keeps the defaults of missing fields, a snapshot missing any of them would pass as empty statistics
+            for (String field : SNAPSHOT_FIELDS)
+            {
+                if (!tree.has(field) || tree.get(field).isJsonNull())
+                {
+                    return null;
+                }
+            }
+
+            final RiskedLootSnapshot snapshot = customGson.fromJson(tree, RiskedLootSnapshot.class);
+            if (snapshot != null && snapshot.getVersion() == RiskedLootSnapshot.VERSION)
+            {
+                return snapshot;
+            }
+        }
+        catch (Exception e)
+        {
+            log.debug("Unable to read risked loot snapshot {}", snapshotFile.getAbsolutePath(), e);
+        }
+
+        return null;
+    }
+
+    private void writeSnapshot(final File folder, final RiskedLootSnapshot snapshot)
+    {
+        final File snapshotFile = new File(folder, SNAPSHOT_FILE_NAME);
+        final File tempFile = new File(folder, SNAPSHOT_FILE_NAME + ".tmp");
+        try
+        {
+            Files.write(tempFile.toPath(), customGson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write risked loot snapshot {}", snapshotFile.getAbsolutePath(), e);
+        }
+    }
+
+    private byte[] encodeJsonLine(final RiskedLootRecord record)
+    {
+        return (customGson.toJson(record) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One-shot conversion of the current player folder to the target format.
+     * The active segment is sealed as it is, new records go to a fresh active segment in the target format
+     * and compaction rewrites every sealed segment in the target format.
+     */
+    private void migrate(final RecordFormat target)
+    {
+        final RecordFormat source = format;
+        format = target;
+        manifest.setFormat(target);
+        saveManifest();
+
+        if (source != null && new File(playerFolder, source.getFileName()).exists())
+        {
+            log.info("Migrating risked loot in {} from {} to {}", playerFolder.getName(), source, target);
+            sealActiveSegment(source);
+        }
+
+        openActiveSegment();
+        scheduleCompaction();
+    }
+
+    /**
+     * Queue the writer thread continuing to append to the active segment of the current format where it was left,
+     * after cutting off a torn tail. An active segment without an index or in an older binary version is sealed so compaction can rewrite it.
+     * Until then appends take the segment as empty, the length the writer thread finds is added by the next append after it.
+     */
+    private void openActiveSegment()
+    {
+        final File folder = playerFolder;
+        final SegmentManifest segmentManifest = manifest;
+        final RecordFormat segmentFormat = format;
+        activeLength = 0;
+        // The first record is indexed, so a binary record names its items again whatever the segment holds
+        lastIndexedOffset = -1;
+        lengthCorrection.set(0);
+        namedIds.clear();
+
+        queueSegmentTask(() ->
+        {
+            final File active = new File(folder, segmentFormat.getFileName());
+            final boolean appendable = recoverActiveSegment(active, segmentFormat, customGson);
+            final TimestampIndex index = TimestampIndex.load(active);
+            if (active.length() > 0 && (index == null || index.lastOffset() < 0 || !appendable))
+            {
+                log.info("Risked loot log {} can't be appended to as is, sealing it to be rewritten", active.getAbsolutePath());
+                seal(folder, segmentManifest, segmentFormat);
+            }
+
+            if (segmentManifest == manifest)
+            {
+                lengthCorrection.set(active.length());
+            }
+        });
+    }
+
+    /**
+     * Cut a partially written record, left by the client being killed part way through an append, off the end of the active segment
+     * so new records don't end up behind it
+     * @return false if the segment can't be appended to in the given format, or is corrupt in a way records appended to it would be unreadable
+     */
+    static boolean recoverActiveSegment(final File active, final RecordFormat format, final Gson gson)
+    {
+        if (!active.exists())
+        {
+            return true;
+        }
+
+        try (FileChannel channel = FileChannel.open(active.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final RiskedLootLogReader reader = RiskedLootLogReader.read(active, format, gson);
+            while (reader.hasNext())
+            {
+                reader.next();
+            }
+
+            if (reader.getCorruptOffset() >= 0)
+            {
+                return false;
+            }
+
+            long torn = reader.getTornOffset();
+            if (format == RecordFormat.BINARY && reader.getVersion() != BinaryRecordCodec.VERSION)
+            {
+                // Cut short before the end of the header
+                if (channel.size() >= BinaryRecordCodec.HEADER_LENGTH)
+                {
+                    return false;
+                }
+                torn = 0;
+            }
+
+            if (torn >= 0)
+            {
+                log.warn("Truncating partially written risked loot record from {} at offset {}", active.getAbsolutePath(), torn);
+                channel.truncate(torn);
+                channel.force(true);
+            }
+            else if (format == RecordFormat.JSON_LINES && channel.size() > 0)
+            {
+                // The last record is complete but lost its line separator, restore it so the next record gets a line of its own
+                final ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, channel.size() - 1);
+                if (last.get(0) != '\n')
+                {
+                    channel.write(ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.UTF_8)), channel.size());
+                    channel.force(true);
+                }
+            }
+
+            TimestampIndex.truncate(active, channel.size());
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to recover risked loot log {}", active.getAbsolutePath(), e);
             return false;
         }
     }
 
     /**
-     * Load all risked loot records for the current player using JSON Lines format
+     * Queue sealing the active segment, every record queued before now still goes to the segment being sealed.
+     * The active length is only brought down once the writer thread has actually sealed it, see {@link #applySeals()}.
      */
-    public synchronized Collection<com.doomlootlost.data.RiskedLootRecord> loadRiskedLootRecords()
+    private void sealActiveSegment(final RecordFormat segmentFormat)
     {
-        if (playerFolder == null || name == null)
+        final File folder = playerFolder;
+        final SegmentManifest segmentManifest = manifest;
+        // Sealing the segment of the format being migrated from doesn't change the length of the one appended to
+        final boolean active = segmentFormat == format;
+        final boolean queued = queueSegmentTask(() ->
         {
-            return new ArrayList<>();
+            final long length = seal(folder, segmentManifest, segmentFormat);
+            if (active && length > 0 && segmentManifest == manifest)
+            {
+                lengthCorrection.addAndGet(-length);
+            }
+        });
+
+        if (queued)
+        {
+            // The next record may start a new segment which needs its own item names, repeating them is harmless if the seal fails
+            namedIds.clear();
         }
+    }
+
+    /**
+     * Queue a task changing the active segment, appends don't queue a seal until it has run
+     * @return false if the write queue is full
+     */
+    private boolean queueSegmentTask(final Runnable task)
+    {
+        pendingSegmentTasks.incrementAndGet();
+        final CompletableFuture<Boolean> queued = appender.run(() ->
+        {
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                pendingSegmentTasks.decrementAndGet();
+            }
+        });
 
-        final File logFile = new File(playerFolder, "risked_loot.log");
-        if (!logFile.exists())
+        if (RecordAppender.isRejected(queued))
         {
-            return new ArrayList<>();
+            pendingSegmentTasks.decrementAndGet();
+            return false;
         }
+        return true;
+    }
 
-        final Collection<com.doomlootlost.data.RiskedLootRecord> data = new ArrayList<>();
+    /**
+     * Bring the length of the active segment and the offset of its last indexed record in line with what the writer thread found
+     */
+    private void applyLengthCorrection()
+    {
+        final long correction = lengthCorrection.getAndSet(0);
+        if (correction != 0)
+        {
+            activeLength = Math.max(0, activeLength + correction);
+            lastIndexedOffset = lastIndexedOffset >= 0 && lastIndexedOffset + correction >= 0 ? lastIndexedOffset + correction : -1;
+        }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile)))
+    /**
+     * Queue writing the manifest of the current player folder
+     */
+    private void saveManifest()
+    {
+        final File folder = playerFolder;
+        final SegmentManifest segmentManifest = manifest;
+        appender.run(() -> segmentManifest.save(folder, customGson));
+    }
+
+    /**
+     * Queue compacting every sealed segment that isn't yet in the folder's current format and compression
+     */
+    private void scheduleCompaction()
+    {
+        final File folder = playerFolder;
+        final SegmentManifest segmentManifest = manifest;
+        final RecordFormat targetFormat = format;
+        final boolean compress = compressSealedSegments;
+        appender.run(() ->
         {
-            String line;
-            while ((line = reader.readLine()) != null)
+            for (SegmentManifest.Segment segment : segmentManifest.getSealed())
             {
-                // Skip empty lines
-                if (line.length() > 0)
+                if (!segment.isCompacted() || segment.getFormat() != targetFormat || segment.isCompressed() != compress
+                    || !TimestampIndex.fileFor(new File(folder, segment.getFileName())).exists())
                 {
-					try
-                     {
-                         final com.doomlootlost.data.RiskedLootRecord record = CUSTOM_GSON.fromJson(line, com.doomlootlost.data.RiskedLootRecord.class);
-                         if (record != null && record.getItems() != null && record.getTimestamp() != null)
-                         {
-                             data.add(record);
-                         }
-                         else
-                         {
-                             log.warn("Skipping invalid risked loot record: {}", record);
-                         }
-                     }
-                     catch (Exception e)
-                     {
-                         log.warn("Failed to parse risked loot record line: {}", line, e);
-                     }
+                    compact(folder, segmentManifest, segment, targetFormat, compress);
                 }
             }
+        });
+    }
+
+    /**
+     * Runs on the writer thread
+     * @return the length of the sealed segment, 0 if it was empty or couldn't be sealed
+     */
+    private long seal(final File folder, final SegmentManifest segmentManifest, final RecordFormat segmentFormat)
+    {
+        final File active = new File(folder, segmentFormat.getFileName());
+        final long length = active.length();
+        if (!active.exists() || length == 0)
+        {
+            return 0;
         }
-        catch (FileNotFoundException e)
+
+        final int sequence = segmentManifest.getActiveSequence();
+        final String fileName = segmentFormat.getSegmentFileName(sequence);
+        final File sealed = new File(folder, fileName);
+        try
         {
-            log.debug("Risked loot file not found: {}", logFile.getAbsolutePath());
+            Files.move(active.toPath(), sealed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            // Offsets don't change, the index stays usable until compaction rewrites it
+            final File index = TimestampIndex.fileFor(active);
+            if (index.exists())
+            {
+                Files.move(index.toPath(), TimestampIndex.fileFor(sealed).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
         }
         catch (IOException e)
         {
-            log.warn("IOException for file {}: {}", logFile.getAbsolutePath(), e.getMessage());
+            // Records keep going to the unmoved segment, the next append tries again
+            log.warn("Failed to seal risked loot segment {}", active.getAbsolutePath(), e);
+            return 0;
         }
 
-        return data;
+        segmentManifest.seal(new SegmentManifest.Segment(sequence, segmentFormat, fileName, false, false));
+        segmentManifest.save(folder, customGson);
+        log.debug("Sealed risked loot segment {}", fileName);
+        return length;
+    }
+
+    // Runs on the writer thread
+    private void compact(final File folder, final SegmentManifest segmentManifest, final SegmentManifest.Segment segment,
+        final RecordFormat targetFormat, final boolean compress)
+    {
+        final RiskedLootLogReader reader = openSegment(folder, segment, 0, false);
+        if (reader == null)
+        {
+            return;
+        }
+
+        final List<RiskedLootRecord> records = new ArrayList<>();
+        int dropped = 0;
+        while (reader.hasNext())
+        {
+            final RiskedLootRecord record = reader.next();
+            if (record.isValid())
+            {
+                records.add(record);
+            }
+            else
+            {
+                dropped++;
+            }
+        }
+        records.sort(Comparator.comparing(RiskedLootRecord::getTimestamp));
+
+        final String fileName = targetFormat.getSegmentFileName(segment.getSequence()) + (compress ? COMPRESSED_EXTENSION : "");
+        final File source = new File(folder, segment.getFileName());
+        final File target = new File(folder, fileName);
+        final File tempFile = new File(folder, fileName + ".tmp");
+        final File indexFile = TimestampIndex.fileFor(target);
+        if (targetFormat == RecordFormat.JSON_LINES && itemDictionary.takeUnsaved(folder))
+        {
+            // The rewritten records reference their names in this folder's dictionary
+            itemDictionary.save(folder, customGson);
+        }
+        final File tempIndexFile = new File(folder, indexFile.getName() + ".tmp");
+        try
+        {
+            final byte[] index;
+            try (OutputStream out = compress
+                ? new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))
+                : new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))
+            {
+                index = writeRecords(out, records, targetFormat);
+            }
+            Files.write(tempIndexFile.toPath(), index);
+
+            // Without an index the segment is compacted again, which beats an index pointing into the old contents
+            Files.deleteIfExists(indexFile.toPath());
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to compact risked loot segment {}", source.getAbsolutePath(), e);
+            tempFile.delete();
+            tempIndexFile.delete();
+            return;
+        }
+
+        segmentManifest.replace(new SegmentManifest.Segment(segment.getSequence(), targetFormat, fileName, compress, true));
+        segmentManifest.save(folder, customGson);
+
+        if (!source.equals(target))
+        {
+            if (!source.delete())
+            {
+                log.warn("Failed to remove compacted risked loot segment {}", source.getAbsolutePath());
+            }
+            TimestampIndex.fileFor(source).delete();
+        }
+
+        log.debug("Compacted risked loot segment {} into {}, {} records kept and {} dropped", segment.getFileName(), fileName, records.size(), dropped);
+    }
+
+    /**
+     * Write a whole segment
+     * @return the {@link TimestampIndex} of the written segment
+     */
+    private byte[] writeRecords(final OutputStream out, final List<RiskedLootRecord> records, final RecordFormat recordFormat) throws IOException
+    {
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final Set<Integer> written = new HashSet<>();
+        long offset = 0;
+        long lastIndexed = -1;
+        if (recordFormat == RecordFormat.BINARY)
+        {
+            final byte[] header = BinaryRecordCodec.header();
+            out.write(header);
+            offset = header.length;
+        }
+
+        for (RiskedLootRecord record : records)
+        {
+            if (lastIndexed < 0 || offset - lastIndexed >= TimestampIndex.INTERVAL_BYTES)
+            {
+                written.clear();
+                index.write(TimestampIndex.entry(record.getTimestamp().getTime(), offset));
+                lastIndexed = offset;
+            }
+
+            final byte[] data = recordFormat == RecordFormat.BINARY ? BinaryRecordCodec.encode(record, written) : encodeJsonLine(record);
+            out.write(data);
+            offset += data.length;
+        }
+
+        return index.toByteArray();
     }
 }
@@ -0,0 +1,486 @@
+package com.doomlootlost.localstorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-writer append pipeline for the loot log files.
+ * Callers enqueue already encoded records and get a future back, a single background thread drains the queue,
+ * batches whatever is pending into one write and keeps the {@link FileChannel}s of the files it appends to open between batches.
+ * Writes are forced to disk according to the {@link DurabilityPolicy} before their futures complete.
+ * A batch that fails part way is cut back off the file, so writes reported as failed leave nothing of themselves behind.
+ * <p>
+ * Enqueueing never waits on the disk, when the queue is full the write is rejected and its future fails straight away,
+ * see {@link #isRejected(CompletableFuture)}.
+ * A write can add an entry to a sidecar {@link TimestampIndex}, its offset is taken from the file as the write happens
+ * so the index stays exact whatever the caller thinks the length of the file is.
+ */
+@Slf4j
+class RecordAppender
+{
+    static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final BlockingQueue<PendingWrite> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private Thread thread;
+    // Last writer thread stopped, the next one waits for it to finish
+    private Thread previousThread;
+
+    private volatile DurabilityPolicy durabilityPolicy = DurabilityPolicy.BATCH;
+
+    // Only accessed from the writer thread
+    private final Map<File, FileChannel> channels = new HashMap<>();
+
+    /**
+     * @return true if the write or task was rejected because the queue was full, nothing was queued.
+     * Only a rejection fails a future, a write that couldn't be made completes with false.
+     */
+    static boolean isRejected(final CompletableFuture<Boolean> future)
+    {
+        return future.isCompletedExceptionally();
+    }
+
+    void setDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+    {
+        this.durabilityPolicy = durabilityPolicy;
+    }
+
+    /**
+     * Queue data to be appended to the end of the given file
+     * @return a future completing with true once the data has been written, or false if it could not be
+     */
+    CompletableFuture<Boolean> append(final File file, final byte[] data)
+    {
+        return append(file, data, null);
+    }
+
+    /**
+     * Queue data to be appended to the end of the given file, writing {@code header} first if the file is empty
+     * @return a future completing with true once the data has been written, or false if it could not be
+     */
+    CompletableFuture<Boolean> append(final File file, final byte[] data, final byte[] header)
+    {
+        return append(file, data, header, null, 0);
+    }
+
+    /**
+     * Queue data to be appended to the end of the given file, then an entry pointing at it to the end of {@code indexFile}
+     * @param indexFile the {@link TimestampIndex} of the file, or null to not index the data
+     * @param timestamp timestamp of the record the data holds
+     * @return a future completing with true once the data has been written, or false if it could not be
+     */
+    CompletableFuture<Boolean> append(final File file, final byte[] data, final byte[] header, final File indexFile, final long timestamp)
+    {
+        final PendingWrite write = new PendingWrite(file, data, header);
+        write.indexFile = indexFile;
+        write.timestamp = timestamp;
+        return enqueue(write);
+    }
+
+    /**
+     * @return a future that completes once every write queued before it has been handled
+     */
+    CompletableFuture<Boolean> flush()
+    {
+        return enqueue(new PendingWrite(null, null, null));
+    }
+
+    /**
+     * Run a task on the writer thread once every write queued before it has been handled.
+     * The open channels are closed first so the task is free to move or replace files.
+     * @return a future completing with true once the task has run, or false if it threw. Rejected if the queue is full
+     */
+    CompletableFuture<Boolean> run(final Runnable task)
+    {
+        final PendingWrite write = new PendingWrite(null, null, null);
+        write.task = task;
+        return enqueue(write);
+    }
+
+    /**
+     * Write out everything still queued, close the open channels and stop the writer thread.
+     * The appender restarts itself on the next append.
+     */
+    void shutDown()
+    {
+        final Thread stopping;
+        synchronized (this)
+        {
+            if (thread == null)
+            {
+                return;
+            }
+
+            // Anything queued after the marker goes to the next writer thread, which waits for this one to finish first
+            stopping = thread;
+            thread = null;
+            previousThread = stopping;
+            putUninterruptibly(PendingWrite.POISON);
+        }
+
+        try
+        {
+            stopping.join();
+        }
+        catch (InterruptedException e)
+        {
+            log.warn("Interrupted while waiting for the risked loot writer to finish");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Boolean> enqueue(final PendingWrite write)
+    {
+        // Checking the writer thread and queueing happen together, so nothing is queued behind a writer that is stopping
+        synchronized (this)
+        {
+            ensureStarted();
+
+            // Callers may be on the client thread, a full queue is reported rather than waited on
+            if (!queue.offer(write))
+            {
+                log.warn("Risked loot write queue is full, rejecting write to {}", write.file);
+                write.future.completeExceptionally(new RejectedExecutionException("Risked loot write queue is full"));
+            }
+        }
+
+        return write.future;
+    }
+
+    private void ensureStarted()
+    {
+        if (thread != null)
+        {
+            return;
+        }
+
+        final Thread previous = previousThread;
+        thread = new Thread(() -> run(previous), "doomlootlost-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void putUninterruptibly(final PendingWrite write)
+    {
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                queue.put(write);
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param previous writer thread stopped before this one started, it may still be writing what was queued before it stopped
+     */
+    private void run(final Thread previous)
+    {
+        joinUninterruptibly(previous);
+
+        final List<PendingWrite> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        boolean running = true;
+
+        while (running)
+        {
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                // Only shutDown stops the writer, keep draining so no queued record is lost
+                continue;
+            }
+
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            int start = 0;
+            for (int i = 0; i < batch.size(); i++)
+            {
+                final PendingWrite write = batch.get(i);
+                if (write.data != null)
+                {
+                    continue;
+                }
+
+                writeAll(batch, start, i);
+                start = i + 1;
+
+                if (write == PendingWrite.POISON)
+                {
+                    running = false;
+                }
+
+                if (write.task != null)
+                {
+                    write.future.complete(runTask(write.task));
+                }
+                else
+                {
+                    write.future.complete(true);
+                }
+            }
+            writeAll(batch, start, batch.size());
+
+            batch.clear();
+        }
+
+        closeChannels();
+    }
+
+    private static void joinUninterruptibly(final Thread previous)
+    {
+        while (previous != null && previous.isAlive())
+        {
+            try
+            {
+                previous.join();
+            }
+            catch (InterruptedException e)
+            {
+                // Only shutDown stops the writer, writing out of order is worse than waiting
+            }
+        }
+    }
+
+    /**
+     * Write the data of batch[from, to) grouping consecutive writes to the same file into a single gathering write
+     */
+    private void writeAll(final List<PendingWrite> batch, final int from, final int to)
+    {
+        int start = from;
+        while (start < to)
+        {
+            final File file = batch.get(start).file;
+            int end = start + 1;
+            while (end < to && file.equals(batch.get(end).file))
+            {
+                end++;
+            }
+
+            final boolean written = write(file, batch.subList(start, end));
+            for (int i = start; i < end; i++)
+            {
+                batch.get(i).future.complete(written);
+            }
+
+            start = end;
+        }
+    }
+
+    private boolean runTask(final Runnable task)
+    {
+        closeChannels();
+
+        try
+        {
+            task.run();
+            return true;
+        }
+        catch (RuntimeException e)
+        {
+            log.warn("Risked loot storage task failed", e);
+            return false;
+        }
+    }
+
+    private boolean write(final File file, final List<PendingWrite> writes)
+    {
+        final ByteBuffer[] buffers = new ByteBuffer[writes.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = ByteBuffer.wrap(writes.get(i).data);
+            remaining += buffers[i].remaining();
+        }
+
+        FileChannel ch = null;
+        long start = -1;
+        final DurabilityPolicy policy = durabilityPolicy;
+        try
+        {
+            ch = channelFor(file, writes.get(0).header);
+            start = ch.size();
+            if (policy == DurabilityPolicy.RECORD)
+            {
+                for (ByteBuffer buffer : buffers)
+                {
+                    while (buffer.hasRemaining())
+                    {
+                        ch.write(buffer);
+                    }
+                    ch.force(false);
+                }
+            }
+            else
+            {
+                while (remaining > 0)
+                {
+                    remaining -= ch.write(buffers);
+                }
+                if (policy == DurabilityPolicy.BATCH)
+                {
+                    ch.force(false);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to save {} risked loot record(s) to {}", writes.size(), file, e);
+            if (start >= 0)
+            {
+                // The whole batch is reported as failed, so none of it may be left in the file
+                truncate(ch, file, start);
+            }
+            closeChannel(file);
+            return false;
+        }
+
+        writeIndexEntries(writes, start, policy);
+        return true;
+    }
+
+    /**
+     * Add the index entries of writes that were just appended starting at offset start.
+     * The data is already safe, a failure only leaves the index short, which readers and compaction cope with.
+     */
+    private void writeIndexEntries(final List<PendingWrite> writes, final long start, final DurabilityPolicy policy)
+    {
+        long offset = start;
+        for (PendingWrite write : writes)
+        {
+            if (write.indexFile != null)
+            {
+                try
+                {
+                    final FileChannel ch = channelFor(write.indexFile, null);
+                    final ByteBuffer entry = ByteBuffer.wrap(TimestampIndex.entry(write.timestamp, offset));
+                    while (entry.hasRemaining())
+                    {
+                        ch.write(entry);
+                    }
+                    if (policy != DurabilityPolicy.NONE)
+                    {
+                        ch.force(false);
+                    }
+                }
+                catch (IOException e)
+                {
+                    log.warn("Failed to index risked loot record in {}", write.indexFile, e);
+                    closeChannel(write.indexFile);
+                }
+            }
+            offset += write.data.length;
+        }
+    }
+
+    private static void truncate(final FileChannel channel, final File file, final long length)
+    {
+        try
+        {
+            channel.truncate(length);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to remove a partially saved batch from {}", file, e);
+        }
+    }
+
+    private FileChannel channelFor(final File file, final byte[] header) throws IOException
+    {
+        FileChannel channel = channels.get(file);
+        if (channel != null)
+        {
+            return channel;
+        }
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channels.put(file, channel);
+
+        if (header != null && channel.size() == 0)
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(header);
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        return channel;
+    }
+
+    private void closeChannels()
+    {
+        for (File file : new ArrayList<>(channels.keySet()))
+        {
+            closeChannel(file);
+        }
+    }
+
+    private void closeChannel(final File file)
+    {
+        final FileChannel channel = channels.remove(file);
+        if (channel == null)
+        {
+            return;
+        }
+
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to close risked loot file {}", file, e);
+        }
+    }
+
+    private static final class PendingWrite
+    {
+        // Marker telling the writer thread to stop once everything before it has been written
+        private static final PendingWrite POISON = new PendingWrite(null, null, null);
+
+        private final File file;
+        // null for flush, task and shutdown markers
+        private final byte[] data;
+        // Written before data when the file is still empty
+        private final byte[] header;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        // Run on the writer thread in queue order
+        private Runnable task;
+        // Index the data is added to once written, null if it isn't indexed
+        private File indexFile;
+        private long timestamp;
+
+        private PendingWrite(final File file, final byte[] data, final byte[] header)
+        {
+            this.file = file;
+            this.data = data;
+            this.header = header;
+        }
+    }
+}
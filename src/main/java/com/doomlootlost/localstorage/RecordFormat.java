@@ -0,0 +1,41 @@
+package com.doomlootlost.localstorage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * On-disk formats a profile folder can store its risked loot records in.
+ * Every profile folder records the format it uses in its {@link SegmentManifest}, so each profile can use its own.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum RecordFormat
+{
+    JSON_LINES("JSON Lines", ".log"),
+    BINARY("Compact binary", ".bin");
+
+    private final String displayName;
+    private final String extension;
+
+    /**
+     * @return the name of the active log segment, the one records are appended to
+     */
+    public String getFileName()
+    {
+        return "risked_loot" + extension;
+    }
+
+    /**
+     * @return the name of a sealed log segment
+     */
+    public String getSegmentFileName(final int sequence)
+    {
+        return String.format("risked_loot.%06d%s", sequence, extension);
+    }
+
+    @Override
+    public String toString()
+    {
+        return displayName;
+    }
+}
@@ -0,0 +1,118 @@
+package com.doomlootlost.localstorage;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes record timestamps as epoch millis and reads them back from epoch millis, ISO-8601 or the locale date strings
+ * older versions wrote. Those were written by {@link java.text.SimpleDateFormat} in the default locale and time zone,
+ * Java 17- put a normal space before the AM/PM part while Java 20+ put the unicode character U+202f there.
+ * <p>
+ * Every formatter is immutable, so one adapter can be shared by loaders decoding segments in parallel.
+ */
+@Slf4j
+public class RecordTimestampAdapter extends TypeAdapter<Date>
+{
+    private static final String LEGACY_PATTERN = "MMM d, yyyy, h:mm:ss a";
+    private static final DateTimeFormatter LEGACY_FORMAT = legacyFormat(Locale.getDefault());
+    // Logs copied over from a client running in another locale
+    private static final DateTimeFormatter LEGACY_ENGLISH_FORMAT = legacyFormat(Locale.ENGLISH);
+
+    private static DateTimeFormatter legacyFormat(final Locale locale)
+    {
+        return new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern(LEGACY_PATTERN)
+            .toFormatter(locale);
+    }
+
+    @Override
+    public void write(JsonWriter out, Date value) throws IOException
+    {
+        if (value == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.value(value.getTime());
+    }
+
+    @Override
+    public Date read(JsonReader reader) throws IOException
+    {
+        final JsonToken token = reader.peek();
+        if (token == JsonToken.NULL)
+        {
+            reader.nextNull();
+            return null;
+        }
+
+        if (token == JsonToken.NUMBER)
+        {
+            return new Date(reader.nextLong());
+        }
+
+        final String date = reader.nextString();
+        final Instant instant = parse(date);
+        if (instant == null)
+        {
+            log.error("Error parsing LootRecord date value: {}", date);
+            return null;
+        }
+        return Date.from(instant);
+    }
+
+    /**
+     * @return the instant the string represents, or null if it isn't in any known format
+     */
+    static Instant parse(final String date)
+    {
+        if (date.isEmpty())
+        {
+            return null;
+        }
+
+        final char first = date.charAt(0);
+        if (first >= '0' && first <= '9' || first == '-')
+        {
+            try
+            {
+                return date.indexOf('T') >= 0 ? Instant.parse(date) : Instant.ofEpochMilli(Long.parseLong(date));
+            }
+            catch (DateTimeParseException | NumberFormatException e)
+            {
+                return null;
+            }
+        }
+
+        final String legacy = date.replace('\u202F', ' ');
+        try
+        {
+            return LocalDateTime.parse(legacy, LEGACY_FORMAT).atZone(ZoneId.systemDefault()).toInstant();
+        }
+        catch (DateTimeParseException e)
+        {
+            try
+            {
+                return LocalDateTime.parse(legacy, LEGACY_ENGLISH_FORMAT).atZone(ZoneId.systemDefault()).toInstant();
+            }
+            catch (DateTimeParseException ex)
+            {
+                return null;
+            }
+        }
+    }
+}
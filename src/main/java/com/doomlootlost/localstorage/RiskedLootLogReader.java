@@ -0,0 +1,428 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.RiskedLootRecord;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lazily decodes risked loot records from a log file, one record per {@link #next()} call.
+ * Only the record being decoded is materialised, the file itself is memory mapped so the history never has to fit on the heap.
+ * Invalid and corrupt records are logged and skipped. A record cut short at the end of the log, left by the client being
+ * killed part way through an append, ends reading and is reported by {@link #getTornOffset()}.
+ */
+@Slf4j
+public class RiskedLootLogReader implements Iterator<RiskedLootRecord>
+{
+    private static final byte NEW_LINE = '\n';
+
+    private final File file;
+    private final RecordFormat format;
+    // Looked up once rather than by every fromJson call
+    private final TypeAdapter<RiskedLootRecord> recordAdapter;
+    // Reused to decode every JSON line, rather than building a String per line
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer line = CharBuffer.allocate(1024);
+    private final ByteBuffer buffer;
+    // Version of a binary log
+    private final int version;
+
+    // Item names read from a binary log so far
+    private final Map<Integer, String> names = new HashMap<>();
+    // Shares the names of binary records and fills in missing ones
+    private ItemDictionary itemDictionary;
+
+    // Records outside [from, to] epoch millis are skipped, the log is assumed to be in the order records happened
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+
+    private RiskedLootRecord next;
+    // Offset the peeked next record starts at
+    private int nextStart;
+    // Offset of a partially written record at the end of the log, -1 if none was found
+    private long tornOffset = -1;
+    // Offset of corruption reading couldn't get past, -1 if none was found
+    private long corruptOffset = -1;
+
+    private RiskedLootLogReader(final File file, final RecordFormat format, final Gson gson, final ByteBuffer buffer, final int offset)
+    {
+        this.file = file;
+        this.format = format;
+        this.recordAdapter = gson == null ? null : gson.getAdapter(RiskedLootRecord.class);
+        this.buffer = buffer;
+
+        int start = offset;
+        if (format == RecordFormat.BINARY && buffer.hasRemaining())
+        {
+            version = BinaryRecordCodec.readHeader(buffer.duplicate());
+            if (version < 0)
+            {
+                log.warn("Risked loot file {} is not a supported binary log", file.getAbsolutePath());
+                start = buffer.limit();
+            }
+            start = Math.max(start, BinaryRecordCodec.HEADER_LENGTH);
+        }
+        else
+        {
+            version = BinaryRecordCodec.VERSION;
+        }
+
+        buffer.position(Math.min(start, buffer.limit()));
+    }
+
+    /**
+     * Open a reader over a memory mapped view of the file
+     */
+    static RiskedLootLogReader map(final File file, final RecordFormat format, final Gson gson) throws IOException
+    {
+        return map(file, format, gson, 0);
+    }
+
+    /**
+     * Open a reader over a memory mapped view of the file, starting at a record boundary previously returned by {@link #getPosition()}
+     */
+    static RiskedLootLogReader map(final File file, final RecordFormat format, final Gson gson, final long offset) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            // The mapping stays valid after the channel is closed
+            return new RiskedLootLogReader(file, format, gson, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), (int) offset);
+        }
+    }
+
+    /**
+     * Open a reader over a heap copy of the file, for callers that are about to rename or replace it.
+     * Some platforms refuse to move a file while a mapping of it is still reachable.
+     */
+    static RiskedLootLogReader read(final File file, final RecordFormat format, final Gson gson) throws IOException
+    {
+        return read(file, format, gson, 0);
+    }
+
+    /**
+     * Open a reader over a heap copy of the file, starting at a record boundary previously returned by {@link #getPosition()}
+     */
+    static RiskedLootLogReader read(final File file, final RecordFormat format, final Gson gson, final long offset) throws IOException
+    {
+        return new RiskedLootLogReader(file, format, gson, ByteBuffer.wrap(Files.readAllBytes(file.toPath())), (int) offset);
+    }
+
+    /**
+     * Open a reader over the decompressed contents of a deflate compressed segment
+     */
+    static RiskedLootLogReader inflate(final File file, final RecordFormat format, final Gson gson, final long offset) throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file)))
+        {
+            return new RiskedLootLogReader(file, format, gson, ByteBuffer.wrap(in.readAllBytes()), (int) offset);
+        }
+    }
+
+    static RiskedLootLogReader empty(final RecordFormat format)
+    {
+        return new RiskedLootLogReader(null, format, null, ByteBuffer.allocate(0), 0);
+    }
+
+    /**
+     * @return the offset just past the last record returned by {@link #next()}, or the end of the file once exhausted
+     */
+    long getPosition()
+    {
+        return next != null ? nextStart : buffer.position();
+    }
+
+    /**
+     * @return the length of the (decompressed) log
+     */
+    long getLength()
+    {
+        return buffer.limit();
+    }
+
+    /**
+     * @return CRC32 of up to {@code length} bytes of the (decompressed) log leading up to offset
+     */
+    long checksum(final long offset, final int length)
+    {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit((int) offset).position((int) Math.max(0, offset - length));
+
+        final CRC32 crc = new CRC32();
+        crc.update(slice);
+        return crc.getValue();
+    }
+
+    /**
+     * @return the version of a binary log, -1 if it isn't a supported one
+     */
+    int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return offset of the partially written record the log ends with, -1 if it doesn't or the reader hasn't got there yet
+     */
+    long getTornOffset()
+    {
+        return tornOffset;
+    }
+
+    /**
+     * @return offset reading stopped at because the log is corrupt past it, -1 if it isn't or the reader hasn't got there yet
+     */
+    long getCorruptOffset()
+    {
+        return corruptOffset;
+    }
+
+    /**
+     * @return the item names of a binary log read up to the current position, including any seeded ones
+     */
+    Map<Integer, String> getNames()
+    {
+        return names;
+    }
+
+    /**
+     * Provide item names defined earlier in a binary log than the offset this reader started at
+     */
+    void seedNames(final Map<Integer, String> names)
+    {
+        this.names.putAll(names);
+    }
+
+    void setItemDictionary(final ItemDictionary itemDictionary)
+    {
+        this.itemDictionary = itemDictionary;
+    }
+
+    /**
+     * Only return records with a timestamp between from and to, inclusive.
+     * Records before from are skipped and reading stops at the first record after to.
+     */
+    void setRange(final long from, final long to)
+    {
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (next == null && buffer.hasRemaining())
+        {
+            nextStart = buffer.position();
+            next = format == RecordFormat.BINARY ? readBinary() : readJsonLine();
+            if (next == null)
+            {
+                break;
+            }
+
+            final long timestamp = next.getTimestamp().getTime();
+            if (timestamp > to)
+            {
+                next = null;
+                buffer.position(buffer.limit());
+            }
+            else if (timestamp < from)
+            {
+                next = null;
+            }
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public RiskedLootRecord next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        final RiskedLootRecord record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * @return a sequential stream of the remaining records
+     */
+    public Stream<RiskedLootRecord> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private RiskedLootRecord readJsonLine()
+    {
+        while (buffer.hasRemaining())
+        {
+            final int start = buffer.position();
+            int end = start;
+            while (end < buffer.limit() && buffer.get(end) != NEW_LINE)
+            {
+                end++;
+            }
+            buffer.position(Math.min(end + 1, buffer.limit()));
+
+            // Skip empty lines, including the second half of windows line endings
+            if (end - start <= 1 && (end == start || buffer.get(start) == '\r'))
+            {
+                continue;
+            }
+
+            final ByteBuffer slice = buffer.duplicate();
+            slice.position(start).limit(end);
+            decodeLine(slice);
+
+            try
+            {
+                final JsonReader reader = new JsonReader(new CharArrayReader(line.array(), 0, line.limit()));
+                final RiskedLootRecord record = recordAdapter.read(reader);
+                if (reader.peek() != JsonToken.END_DOCUMENT)
+                {
+                    throw new IOException("Unexpected content after the risked loot record");
+                }
+
+                // The record adapter reads invalid records as null
+                if (record != null && record.getItems() != null && record.getTimestamp() != null)
+                {
+                    return record;
+                }
+
+                log.warn("Skipping invalid risked loot record: {}", line);
+            }
+            catch (Exception e)
+            {
+                // Every record is written with its line separator, so an unterminated last line was cut short
+                if (end == buffer.limit())
+                {
+                    log.warn("Risked loot file {} ends with a partially written record at offset {}", file.getAbsolutePath(), start);
+                    tornOffset = start;
+                    return null;
+                }
+
+                log.warn("Failed to parse risked loot record line: {}", line, e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decode a line of UTF-8 into {@link #line}
+     */
+    private void decodeLine(final ByteBuffer slice)
+    {
+        // UTF-8 never decodes to more chars than it has bytes
+        if (line.capacity() < slice.remaining())
+        {
+            line = CharBuffer.allocate(Math.max(slice.remaining(), line.capacity() * 2));
+        }
+
+        line.clear();
+        decoder.reset();
+        decoder.decode(slice, line, true);
+        decoder.flush(line);
+        line.flip();
+    }
+
+    private RiskedLootRecord readBinary()
+    {
+        while (true)
+        {
+            final int start = buffer.position();
+            try
+            {
+                final RiskedLootRecord record = BinaryRecordCodec.decode(buffer, names, version);
+                if (record != null)
+                {
+                    for (LTItemEntry item : record.getItems())
+                    {
+                        // A lost name entry only costs the item its name, the record still counts
+                        if (item.getName() == null)
+                        {
+                            item.setName(itemDictionary == null ? ItemDictionary.unknownName(item.getId()) : itemDictionary.getNameOrUnknown(item.getId()));
+                        }
+                        else if (itemDictionary != null)
+                        {
+                            item.setName(itemDictionary.intern(item.getId(), item.getName()));
+                        }
+                    }
+                }
+                return record;
+            }
+            catch (BufferUnderflowException e)
+            {
+                log.warn("Risked loot file {} ends with a partially written record at offset {}", file.getAbsolutePath(), start);
+                tornOffset = start;
+            }
+            catch (IllegalStateException e)
+            {
+                // The frame was skipped over, carry on with the next one
+                if (version == BinaryRecordCodec.VERSION && buffer.position() > start)
+                {
+                    log.warn("Skipping corrupt risked loot record in {}: {}", file.getAbsolutePath(), e.getMessage());
+                    continue;
+                }
+
+                // Some file systems leave a crashed append zero filled rather than cut short
+                if (isZeroFilled(start))
+                {
+                    log.warn("Risked loot file {} ends with a partially written record at offset {}", file.getAbsolutePath(), start);
+                    tornOffset = start;
+                }
+                else
+                {
+                    log.warn("Risked loot file {} is corrupt, stopping at offset {}", file.getAbsolutePath(), start, e);
+                    corruptOffset = start;
+                }
+            }
+
+            buffer.position(buffer.limit());
+            return null;
+        }
+    }
+
+    private boolean isZeroFilled(final int from)
+    {
+        for (int i = from; i < buffer.limit(); i++)
+        {
+            if (buffer.get(i) != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.RiskedLootRecord;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Streams {@link RiskedLootRecord}s to and from JSON without going through reflection.
+ * Records are checked against {@link RiskedLootRecord#isValid()} as they are read, invalid ones are read as null.
+ */
+public class RiskedLootRecordAdapter extends TypeAdapter<RiskedLootRecord>
+{
+    // Loot screens rarely hold more items than this
+    private static final int EXPECTED_ITEMS = 8;
+
+    private final TypeAdapter<Date> timestampAdapter;
+    private final TypeAdapter<LTItemEntry> itemAdapter;
+
+    public RiskedLootRecordAdapter(final TypeAdapter<Date> timestampAdapter, final TypeAdapter<LTItemEntry> itemAdapter)
+    {
+        this.timestampAdapter = timestampAdapter;
+        this.itemAdapter = itemAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, RiskedLootRecord value) throws IOException
+    {
+        if (value == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("items");
+        if (value.getItems() == null)
+        {
+            out.nullValue();
+        }
+        else
+        {
+            out.beginArray();
+            for (LTItemEntry item : value.getItems())
+            {
+                itemAdapter.write(out, item);
+            }
+            out.endArray();
+        }
+        out.name("timestamp");
+        timestampAdapter.write(out, value.getTimestamp());
+        out.name("wave").value(value.getWave());
+        out.name("totalValue").value(value.getTotalValue());
+        out.name("wasLost").value(value.isWasLost());
+        out.endObject();
+    }
+
+    @Override
+    public RiskedLootRecord read(JsonReader in) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+
+        List<LTItemEntry> items = null;
+        boolean itemsValid = true;
+        Date timestamp = null;
+        int wave = 0;
+        long totalValue = 0;
+        boolean wasLost = false;
+
+        in.beginObject();
+        while (in.hasNext())
+        {
+            final String name = in.nextName();
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name)
+            {
+                case "items":
+                    items = new ArrayList<>(EXPECTED_ITEMS);
+                    in.beginArray();
+                    while (in.hasNext())
+                    {
+                        final LTItemEntry item = itemAdapter.read(in);
+                        itemsValid &= item != null && item.isValid();
+                        items.add(item);
+                    }
+                    in.endArray();
+                    break;
+                case "timestamp":
+                    timestamp = timestampAdapter.read(in);
+                    break;
+                case "wave":
+                    wave = in.nextInt();
+                    break;
+                case "totalValue":
+                    totalValue = in.nextLong();
+                    break;
+                case "wasLost":
+                    wasLost = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (!itemsValid || items == null || items.isEmpty() || timestamp == null || wave <= 0)
+        {
+            return null;
+        }
+
+        return new RiskedLootRecord(items, timestamp, wave, totalValue, wasLost);
+    }
+}
@@ -0,0 +1,43 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.LossAggregates;
+import com.doomlootlost.data.LossRollups;
+import com.doomlootlost.data.RiskedLootRecord;
+import com.doomlootlost.data.RiskedLootTotals;
+import com.doomlootlost.data.WaveStatistics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * Checkpoint of everything the plugin derives from a risked loot log, its statistics, rollups, item totals, risk per wave and
+ * rankings, stored beside the log in `risked_loot.snapshot`.
+ * Only the records after {@link #offset} in {@link #segment} and any later segments, and the deaths after {@link #deathsOffset},
+ * have to be read to bring the totals up to date.
+ */
+@Data
+class RiskedLootSnapshot
+{
+    static final int VERSION = 5;
+
+    private int version = VERSION;
+    // Sequence of the log segment the totals cover up to, every earlier segment is covered entirely
+    private int segment;
+    // Length of that segment covered by the totals, always on a record boundary
+    private long offset;
+    // CRC32 of the segment's bytes just before offset, used to detect a segment that was replaced or rewritten
+    private long checksum;
+    // Length of the deaths file counted in the rollups, always a whole number of deaths
+    private long deathsOffset;
+    private RiskedLootTotals totals = new RiskedLootTotals();
+    private LossRollups rollups = new LossRollups();
+    // Lost item totals in the order they were first lost
+    private List<LossAggregates.ItemTotal> items = new ArrayList<>();
+    private WaveStatistics waves = new WaveStatistics();
+    private List<RiskedLootRecord> mostValuableLosses = new ArrayList<>();
+    private List<RiskedLootRecord> deepestWaves = new ArrayList<>();
+    // Item names defined in a binary segment before offset
+    private Map<Integer, String> names = new HashMap<>();
+}
@@ -0,0 +1,152 @@
+package com.doomlootlost.localstorage;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lists the segments of a player's risked loot log, stored as `risked_loot.manifest` in the player folder.
+ * Records are always appended to the active segment ({@link RecordFormat#getFileName()}), which is sealed
+ * into `risked_loot.<sequence>.<ext>` once it grows too large or too old. Sealed segments are never appended to again.
+ * <p>
+ * The segment list is only changed from the writer thread, readers take a copy of it with {@link #getSegments(RecordFormat)}.
+ */
+@Slf4j
+class SegmentManifest
+{
+    static final String FILE_NAME = "risked_loot.manifest";
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Segment
+    {
+        private int sequence;
+        private RecordFormat format;
+        private String fileName;
+        // Deflate (gzip) compressed on disk
+        private boolean compressed;
+        // Rewritten by the compactor since it was sealed
+        private boolean compacted;
+    }
+
+    // Sequence number the active segment gets when it is sealed
+    private volatile int activeSequence = 1;
+    // Epoch millis the active segment was started at
+    private volatile long activeSince;
+    // Sealed segments oldest first, replaced rather than modified
+    private volatile List<Segment> sealed = Collections.emptyList();
+    // Format chosen for this player folder, null in manifests written before it was recorded
+    private volatile RecordFormat format;
+
+    static SegmentManifest load(final File folder, final Gson gson)
+    {
+        final File file = new File(folder, FILE_NAME);
+        if (file.exists())
+        {
+            try
+            {
+                final SegmentManifest manifest = gson.fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), SegmentManifest.class);
+                if (manifest != null && manifest.sealed != null)
+                {
+                    manifest.sealed = Collections.unmodifiableList(new ArrayList<>(manifest.sealed));
+                    return manifest;
+                }
+            }
+            catch (Exception e)
+            {
+                log.warn("Unable to read risked loot manifest {}, starting a new one", file.getAbsolutePath(), e);
+            }
+        }
+
+        final SegmentManifest manifest = new SegmentManifest();
+        manifest.activeSince = System.currentTimeMillis();
+        return manifest;
+    }
+
+    synchronized void save(final File folder, final Gson gson)
+    {
+        final File file = new File(folder, FILE_NAME);
+        final File tempFile = new File(folder, FILE_NAME + ".tmp");
+        try
+        {
+            Files.write(tempFile.toPath(), gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to write risked loot manifest {}", file.getAbsolutePath(), e);
+        }
+    }
+
+    int getActiveSequence()
+    {
+        return activeSequence;
+    }
+
+    long getActiveSince()
+    {
+        return activeSince;
+    }
+
+    RecordFormat getFormat()
+    {
+        return format;
+    }
+
+    void setFormat(final RecordFormat format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * @return the sealed segments, oldest first
+     */
+    List<Segment> getSealed()
+    {
+        return sealed;
+    }
+
+    /**
+     * @return every segment oldest first, ending with the active segment in the given format
+     */
+    List<Segment> getSegments(final RecordFormat activeFormat)
+    {
+        final List<Segment> segments = new ArrayList<>(sealed.size() + 1);
+        segments.addAll(sealed);
+        segments.add(new Segment(activeSequence, activeFormat, activeFormat.getFileName(), false, false));
+        return segments;
+    }
+
+    /**
+     * Record the active segment as sealed and start a new active segment
+     */
+    synchronized void seal(final Segment segment)
+    {
+        final List<Segment> segments = new ArrayList<>(sealed);
+        segments.add(segment);
+        sealed = Collections.unmodifiableList(segments);
+        activeSequence = segment.getSequence() + 1;
+        activeSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Swap a sealed segment for its rewritten replacement
+     */
+    synchronized void replace(final Segment segment)
+    {
+        final List<Segment> segments = new ArrayList<>(sealed);
+        segments.replaceAll(s -> s.getSequence() == segment.getSequence() ? segment : s);
+        sealed = Collections.unmodifiableList(segments);
+    }
+}
@@ -0,0 +1,147 @@
+package com.doomlootlost.localstorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sparse index from record timestamps to log offsets, stored beside each log segment as `<segment>.idx`.
+ * An entry is added for the first record of a segment and then for the first record starting at least
+ * {@link #INTERVAL_BYTES} after the previous entry. Entries are fixed width big-endian (epoch millis, offset) pairs.
+ * <p>
+ * Records are appended in the order they happen, so a range query can binary search the index for the last entry
+ * before the start of the range and read forward from there until it passes the end of the range.
+ * Binary segments restart their item name definitions at every indexed record so reading can start at any entry.
+ */
+@Slf4j
+class TimestampIndex
+{
+    static final String EXTENSION = ".idx";
+    static final int ENTRY_SIZE = Long.BYTES * 2;
+    static final long INTERVAL_BYTES = 8 * 1024;
+
+    private final long[] timestamps;
+    private final long[] offsets;
+
+    private TimestampIndex(final long[] timestamps, final long[] offsets)
+    {
+        this.timestamps = timestamps;
+        this.offsets = offsets;
+    }
+
+    static File fileFor(final File segmentFile)
+    {
+        return new File(segmentFile.getParentFile(), segmentFile.getName() + EXTENSION);
+    }
+
+    static byte[] entry(final long timestamp, final long offset)
+    {
+        return ByteBuffer.allocate(ENTRY_SIZE).putLong(timestamp).putLong(offset).array();
+    }
+
+    /**
+     * @return the index stored beside the segment, or null if it doesn't exist or can't be read
+     */
+    static TimestampIndex load(final File segmentFile)
+    {
+        final File file = fileFor(segmentFile);
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            // A torn last entry is ignored
+            final int count = buffer.remaining() / ENTRY_SIZE;
+            final long[] timestamps = new long[count];
+            final long[] offsets = new long[count];
+            for (int i = 0; i < count; i++)
+            {
+                timestamps[i] = buffer.getLong();
+                offsets[i] = buffer.getLong();
+            }
+            return new TimestampIndex(timestamps, offsets);
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to read risked loot index {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Drop the entries pointing past the end of a segment cut down to length, along with a partially written last entry
+     */
+    static void truncate(final File segmentFile, final long length) throws IOException
+    {
+        final TimestampIndex index = load(segmentFile);
+        if (index == null)
+        {
+            return;
+        }
+
+        int keep = 0;
+        while (keep < index.offsets.length && index.offsets[keep] < length)
+        {
+            keep++;
+        }
+
+        try (FileChannel channel = FileChannel.open(fileFor(segmentFile).toPath(), StandardOpenOption.WRITE))
+        {
+            channel.truncate((long) keep * ENTRY_SIZE);
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return timestamps.length == 0;
+    }
+
+    /**
+     * @return timestamp of the first record in the segment, or {@link Long#MAX_VALUE} if the index is empty
+     */
+    long firstTimestamp()
+    {
+        return isEmpty() ? Long.MAX_VALUE : timestamps[0];
+    }
+
+    /**
+     * @return offset of the last indexed record, or -1 if the index is empty
+     */
+    long lastOffset()
+    {
+        return isEmpty() ? -1 : offsets[offsets.length - 1];
+    }
+
+    /**
+     * @return offset of the last indexed record older than {@code timestamp}, every record at or after {@code timestamp}
+     * starts at or after it. 0 if there is no such record
+     */
+    long seek(final long timestamp)
+    {
+        int low = 0;
+        int high = timestamps.length - 1;
+        int found = -1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp)
+            {
+                found = mid;
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        return found < 0 ? 0 : offsets[found];
+    }
+}
@@ -25,11 +25,13 @@
 package com.doomlootlost.ui;
 
 import com.doomlootlost.DoomLootLostPlugin;
+import com.doomlootlost.data.LossAggregates;
+import com.doomlootlost.data.LossRollups;
+import com.doomlootlost.data.RiskedLootRecord;
+import com.doomlootlost.data.WaveStatistics;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
-import java.util.HashMap;
-import java.util.Map;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingConstants;
@@ -43,10 +45,21 @@ import net.runelite.client.ui.PluginPanel;
 @Slf4j
 public class LootLoggerPanel extends PluginPanel
 {
+    private static final int BIGGEST_LOSSES_SHOWN = 5;
+    private static final int WEEKS_SHOWN = 4;
+    private static final java.time.format.DateTimeFormatter LOSS_DATE_FORMAT =
+        java.time.format.DateTimeFormatter.ofPattern("d MMM yyyy").withZone(java.time.ZoneId.systemDefault());
+    // Rollups are bucketed in UTC, their start dates are shown in it too
+    private static final java.time.format.DateTimeFormatter WEEK_FORMAT =
+        java.time.format.DateTimeFormatter.ofPattern("d MMM").withZone(LossRollups.ZONE);
+
     private final ItemManager itemManager;
     private final DoomLootLostPlugin plugin;
 
     private JPanel mainPanel;
+    // Grid built for the most lost items ranking it was built from, reused until the plugin publishes a new one
+    private java.util.List<LossAggregates.ItemTotal> gridItems;
+    private JPanel itemsGridPanel;
     private JLabel deathLabel;
     private JLabel valueLabel;
 
@@ -114,25 +127,63 @@ public class LootLoggerPanel extends PluginPanel
         statsPanel.add(deathLabel);
         statsPanel.add(javax.swing.Box.createVerticalStrut(8));
         statsPanel.add(valueLabel);
+        
+        // Deepest wave any risked loot was claimed or lost at
+        java.util.List<RiskedLootRecord> deepestWaves = plugin.getDeepestWaves();
+        if (!deepestWaves.isEmpty())
+        {
+            JLabel deepestLabel = new JLabel("Deepest Wave: " + deepestWaves.get(0).getWave());
+            deepestLabel.setForeground(Color.LIGHT_GRAY);
+            deepestLabel.setFont(new java.awt.Font("Arial", java.awt.Font.PLAIN, 12));
+            deepestLabel.setAlignmentX(java.awt.Component.CENTER_ALIGNMENT);
+            statsPanel.add(javax.swing.Box.createVerticalStrut(8));
+            statsPanel.add(deepestLabel);
+        }
+        
+        // What the lost items would be worth at today's prices
+        if (!plugin.getLossAggregates().getMostLost().isEmpty())
+        {
+            JLabel currentValueLabel = new JLabel("Current Value: " + formatGoldValue(plugin.getCurrentValueLost()));
+            currentValueLabel.setForeground(Color.YELLOW);
+            currentValueLabel.setFont(new java.awt.Font("Arial", java.awt.Font.PLAIN, 12));
+            currentValueLabel.setAlignmentX(java.awt.Component.CENTER_ALIGNMENT);
+            statsPanel.add(javax.swing.Box.createVerticalStrut(8));
+            statsPanel.add(currentValueLabel);
+        }
+        
+        // Odds of descending with the loot at risk now, from the risk per wave
+        final WaveStatistics.Descent descent = plugin.getDescent();
+        if (descent != null)
+        {
+            final long expectedValue = descent.getExpectedValue();
+            JLabel descentLabel = new JLabel(String.format("Wave %d: %.0f%% survival, EV %s%s",
+                descent.getWave(), descent.getSurvivalRate() * 100, expectedValue < 0 ? "-" : "+", formatGoldValue(Math.abs(expectedValue))));
+            descentLabel.setForeground(expectedValue < 0 ? Color.RED : Color.GREEN);
+            descentLabel.setFont(new java.awt.Font("Arial", java.awt.Font.PLAIN, 12));
+            descentLabel.setAlignmentX(java.awt.Component.CENTER_ALIGNMENT);
+            statsPanel.add(javax.swing.Box.createVerticalStrut(8));
+            statsPanel.add(descentLabel);
+        }
         statsPanel.add(javax.swing.Box.createVerticalStrut(15));
         
-        		// Get lost loot data
-		java.util.List<com.doomlootlost.data.RiskedLootRecord> allRiskedRecords = plugin.getRiskedLootHistory();
-		
-		java.util.List<com.doomlootlost.data.RiskedLootRecord> lostLootRecords = allRiskedRecords
-			.stream()
-			.filter(com.doomlootlost.data.RiskedLootRecord::isWasLost)
-			.sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp())) // Most recent first
-			.collect(java.util.stream.Collectors.toList());
+        // Items with the most value lost, already totalled and ranked by the plugin
+        java.util.List<LossAggregates.ItemTotal> lostItems = plugin.getLossAggregates().getMostLost();
         
         // Create grid display directly below the value line
         JPanel gridPanel;
-        if (lostLootRecords.isEmpty()) {
+        if (plugin.isHistoryLoading()) {
+            // History is still being read from disk
+            gridPanel = createLoadingPanel();
+        } else if (lostItems.isEmpty()) {
             // Show empty grid
             gridPanel = createEmptyGridPanel();
         } else {
-            // Show items in grid
-            gridPanel = createItemsGridPanel(lostLootRecords);
+            // Show items in grid, snapshots are immutable so an unchanged one needs no rebuild
+            if (lostItems != gridItems) {
+                itemsGridPanel = createItemsGridPanel(lostItems);
+                gridItems = lostItems;
+            }
+            gridPanel = itemsGridPanel;
         }
         
         // Create a fixed-size container for the grid to prevent vertical stretching
@@ -160,6 +211,22 @@ public class LootLoggerPanel extends PluginPanel
         mainContentPanel.add(javax.swing.Box.createVerticalStrut(10));
         mainContentPanel.add(gridContainer);
         
+        // Ranking of the most valuable single losses, kept by the plugin as records come in
+        java.util.List<RiskedLootRecord> biggestLosses = plugin.getMostValuableLosses();
+        if (!plugin.isHistoryLoading() && !biggestLosses.isEmpty()) {
+            mainContentPanel.add(javax.swing.Box.createVerticalStrut(10));
+            mainContentPanel.add(createBiggestLossesPanel(biggestLosses));
+        }
+        
+        // Recent weeks from the rollups, a handful of buckets however long the history
+        final long now = System.currentTimeMillis();
+        final long firstWeek = LossRollups.Period.WEEK.start(now - java.util.concurrent.TimeUnit.DAYS.toMillis(7L * (WEEKS_SHOWN - 1)));
+        java.util.List<LossRollups.Bucket> weeks = plugin.getLossRollups().getBuckets(LossRollups.Period.WEEK, firstWeek, now);
+        if (!plugin.isHistoryLoading() && !weeks.isEmpty()) {
+            mainContentPanel.add(javax.swing.Box.createVerticalStrut(10));
+            mainContentPanel.add(createWeeksPanel(weeks));
+        }
+        
         // Add all components to main panel
         mainPanel.add(headerPanel, BorderLayout.NORTH);
         mainPanel.add(mainContentPanel, BorderLayout.CENTER);
@@ -214,6 +281,20 @@ public class LootLoggerPanel extends PluginPanel
 		SwingUtilities.invokeLater(this::showMainView);
     }
 
+    private JPanel createLoadingPanel()
+    {
+        JPanel panel = new JPanel();
+        panel.setLayout(new BorderLayout());
+        panel.setBackground(ColorScheme.DARK_GRAY_COLOR);
+
+        JLabel loadingLabel = new JLabel("Loading history...");
+        loadingLabel.setForeground(Color.GRAY);
+        loadingLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        panel.add(loadingLabel, BorderLayout.CENTER);
+
+        return panel;
+    }
+
     private JPanel createEmptyGridPanel()
     {
         JPanel panel = new JPanel();
@@ -239,46 +320,14 @@ public class LootLoggerPanel extends PluginPanel
         return panel;
     }
     
-    private JPanel createItemsGridPanel(java.util.List<com.doomlootlost.data.RiskedLootRecord> lostRecords)
+    private JPanel createItemsGridPanel(java.util.List<LossAggregates.ItemTotal> sortedItems)
     {
-        // Aggregate all lost items by ID and sum quantities
-        Map<Integer, com.doomlootlost.localstorage.LTItemEntry> aggregatedItems = new HashMap<>();
-        
-        for (com.doomlootlost.data.RiskedLootRecord record : lostRecords) {
-            for (com.doomlootlost.localstorage.LTItemEntry item : record.getItems()) {
-                int itemId = item.getId();
-                if (aggregatedItems.containsKey(itemId)) {
-                    // Add to existing quantity
-                    com.doomlootlost.localstorage.LTItemEntry existing = aggregatedItems.get(itemId);
-                    com.doomlootlost.localstorage.LTItemEntry updated = new com.doomlootlost.localstorage.LTItemEntry(
-                        existing.getName(), 
-                        existing.getId(),
-                        existing.getQuantity() + item.getQuantity(),
-                        existing.getPrice()
-                    );
-                    aggregatedItems.put(itemId, updated);
-                } else {
-                    // Add new item
-                    aggregatedItems.put(itemId, item);
-                }
-            }
-        }
-        
-        // Convert to array and sort by total value (price * quantity) descending
-        com.doomlootlost.localstorage.LTItemEntry[] sortedItems = aggregatedItems.values()
-            .stream()
-            .sorted((a, b) -> Long.compare(
-                (long) b.getPrice() * b.getQuantity(), 
-                (long) a.getPrice() * a.getQuantity()
-            ))
-            .toArray(com.doomlootlost.localstorage.LTItemEntry[]::new);
-        
         // Use the original Loot-Logger grid approach
         JPanel panel = new JPanel();
         
         // Calculate how many rows need to be displayed to fit all items (5 items per row)
         final int ITEMS_PER_ROW = 5;
-        final int rowSize = ((sortedItems.length % ITEMS_PER_ROW == 0) ? 0 : 1) + sortedItems.length / ITEMS_PER_ROW;
+        final int rowSize = ((sortedItems.size() % ITEMS_PER_ROW == 0) ? 0 : 1) + sortedItems.size() / ITEMS_PER_ROW;
         panel.setLayout(new java.awt.GridLayout(rowSize, ITEMS_PER_ROW, 1, 1));
         panel.setBackground(ColorScheme.DARK_GRAY_COLOR);
         
@@ -290,9 +339,9 @@ public class LootLoggerPanel extends PluginPanel
             slot.setBackground(ColorScheme.DARKER_GRAY_COLOR);
             slot.setPreferredSize(new java.awt.Dimension(40, 40));
             
-            if (i < sortedItems.length)
+            if (i < sortedItems.size())
             {
-                final com.doomlootlost.localstorage.LTItemEntry item = sortedItems[i];
+                final LossAggregates.ItemTotal item = sortedItems.get(i);
                 if (item == null)
                 {
                     continue;
@@ -301,7 +350,8 @@ public class LootLoggerPanel extends PluginPanel
                 itemLabel.setToolTipText(buildToolTip(item));
                 itemLabel.setVerticalAlignment(SwingConstants.CENTER);
                 itemLabel.setHorizontalAlignment(SwingConstants.CENTER);
-                itemManager.getImage(item.getId(), item.getQuantity(), item.getQuantity() > 1).addTo(itemLabel);
+                final int quantity = (int) Math.min(Integer.MAX_VALUE, item.getQuantity());
+                itemManager.getImage(item.getId(), quantity, quantity > 1).addTo(itemLabel);
                 slot.add(itemLabel);
             }
             
@@ -311,14 +361,67 @@ public class LootLoggerPanel extends PluginPanel
         return panel;
     }
     
-    private String buildToolTip(final com.doomlootlost.localstorage.LTItemEntry item)
+    private JPanel createBiggestLossesPanel(java.util.List<RiskedLootRecord> losses)
     {
-        final String name = item.getName();
-        final int quantity = item.getQuantity();
-        final long price = item.getPrice();
-
-        return name + " x " + quantity + "\n"
-            + "Price: " + formatGoldValue(price) + "\n"
-            + "Total: " + formatGoldValue(quantity * price);
+        final int shown = Math.min(losses.size(), BIGGEST_LOSSES_SHOWN);
+        JPanel panel = new JPanel();
+        panel.setLayout(new java.awt.GridLayout(shown + 1, 1, 0, 2));
+        panel.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        panel.setAlignmentX(java.awt.Component.CENTER_ALIGNMENT);
+        
+        JLabel titleLabel = new JLabel("Biggest Losses");
+        titleLabel.setForeground(Color.WHITE);
+        titleLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        panel.add(titleLabel);
+        
+        for (int i = 0; i < shown; i++)
+        {
+            final RiskedLootRecord loss = losses.get(i);
+            JLabel lossLabel = new JLabel(formatGoldValue(loss.getTotalValue()) + " at wave " + loss.getWave()
+                + " on " + LOSS_DATE_FORMAT.format(loss.getTimestamp().toInstant()));
+            lossLabel.setForeground(Color.ORANGE);
+            lossLabel.setFont(new java.awt.Font("Arial", java.awt.Font.PLAIN, 12));
+            lossLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            panel.add(lossLabel);
+        }
+        
+        return panel;
+    }
+    
+    private JPanel createWeeksPanel(java.util.List<LossRollups.Bucket> weeks)
+    {
+        JPanel panel = new JPanel();
+        panel.setLayout(new java.awt.GridLayout(weeks.size() + 1, 1, 0, 2));
+        panel.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        panel.setAlignmentX(java.awt.Component.CENTER_ALIGNMENT);
+        
+        JLabel titleLabel = new JLabel("Recent Weeks (UTC)");
+        titleLabel.setForeground(Color.WHITE);
+        titleLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        panel.add(titleLabel);
+        
+        // Newest first
+        for (int i = weeks.size() - 1; i >= 0; i--)
+        {
+            final LossRollups.Bucket week = weeks.get(i);
+            JLabel weekLabel = new JLabel(WEEK_FORMAT.format(java.time.Instant.ofEpochMilli(week.getStart())) + ": "
+                + week.getDeaths() + (week.getDeaths() == 1 ? " death, " : " deaths, ") + formatGoldValue(week.getValueLost()) + " lost");
+            weekLabel.setToolTipText("<html>" + week.getLosses() + " lost, " + week.getClaims() + " claimed<br>"
+                + "Claimed: " + formatGoldValue(week.getValueClaimed()) + "<br>"
+                + "Deepest wave: " + week.getHighestWave() + "</html>");
+            weekLabel.setForeground(Color.LIGHT_GRAY);
+            weekLabel.setFont(new java.awt.Font("Arial", java.awt.Font.PLAIN, 12));
+            weekLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            panel.add(weekLabel);
+        }
+        
+        return panel;
+    }
+    
+    private String buildToolTip(final LossAggregates.ItemTotal item)
+    {
+        return item.getName() + " x " + item.getQuantity() + "\n"
+            + "Price: " + formatGoldValue(item.getPrice()) + "\n"
+            + "Total: " + formatGoldValue(item.getValue());
     }
 }
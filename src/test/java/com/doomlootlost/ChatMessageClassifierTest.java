@@ -0,0 +1,173 @@
+package com.doomlootlost;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ChatMessageClassifierTest
+{
+	private final ChatMessageClassifier classifier = new ChatMessageClassifier();
+	private final List<String> matched = new ArrayList<>();
+
+	private ChatMessageClassifier.Rule record(final String name)
+	{
+		return (message, from) ->
+		{
+			matched.add(name + ":" + message.substring(from));
+			return true;
+		};
+	}
+
+	@Test
+	public void messagesAreDispatchedByLiteral()
+	{
+		classifier.register("Your Doom completion count is: ", record("count"));
+		classifier.register("You have claimed ", record("claim"));
+
+		assertTrue(classifier.classify("Your Doom completion count is: 12."));
+		assertTrue(classifier.classify("You have claimed your loot."));
+		assertFalse(classifier.classify("Welcome to Old School RuneScape."));
+		assertFalse(classifier.classify("You have been poisoned."));
+
+		assertEquals(2, matched.size());
+		assertEquals("count:12.", matched.get(0));
+		assertEquals("claim:your loot.", matched.get(1));
+	}
+
+	@Test
+	public void leadingTagsAreSkipped()
+	{
+		classifier.register("Delve level: ", record("level"));
+
+		assertTrue(classifier.classify("<col=ef1020><br>Delve level: 4"));
+		assertEquals("level:4", matched.get(0));
+	}
+
+	@Test
+	public void messagesOfOnlyTagsOrNothingAreRejected()
+	{
+		classifier.register("Delve level: ", record("level"));
+
+		assertFalse(classifier.classify(""));
+		assertFalse(classifier.classify("<col=ef1020></col>"));
+		assertFalse(classifier.classify("<col=ef1020"));
+		assertFalse(classifier.classify("Delve level"));
+		assertTrue(matched.isEmpty());
+	}
+
+	@Test
+	public void literalIsFoundAnywhereInTheMessage()
+	{
+		classifier.register("Wave ", record("wave"));
+		classifier.register("Risk your loot", record("risk"));
+
+		assertTrue(classifier.classify("Doom: Wave 4 complete!"));
+		assertTrue(classifier.classify("éWave 5 complete!"));
+		assertTrue(classifier.classify("Choose: <col=ff0000>Risk your loot</col> or claim it."));
+
+		assertEquals("wave:4 complete!", matched.get(0));
+		assertEquals("wave:5 complete!", matched.get(1));
+		assertEquals("risk:</col> or claim it.", matched.get(2));
+	}
+
+	@Test
+	public void literalInsideATagIsIgnored()
+	{
+		classifier.register("Wave ", record("wave"));
+
+		assertFalse(classifier.classify("<img=Wave 1>done"));
+		assertFalse(classifier.classify("<col=ff0000>Wa</col>ve 1"));
+		assertTrue(matched.isEmpty());
+	}
+
+	@Test
+	public void laterOccurrenceIsTriedWhenTheFirstDoesntFit()
+	{
+		classifier.register("Wave ", (message, from) ->
+		{
+			final int wave = ChatMessageClassifier.parseNumber(message, from);
+			if (wave == -1)
+			{
+				return false;
+			}
+			matched.add("wave:" + wave);
+			return true;
+		});
+
+		assertTrue(classifier.classify("Wave after wave: Wave 7 complete!"));
+		assertEquals("wave:7", matched.get(0));
+	}
+
+	@Test
+	public void ruleRejectingTheMessageLetsTheNextRuleTry()
+	{
+		classifier.register("Delve level: ", (message, from) -> ChatMessageClassifier.parseNumber(message, from) > 8);
+		classifier.register("Delve level: ", record("fallback"));
+
+		assertTrue(classifier.classify("Delve level: 9"));
+		assertTrue(matched.isEmpty());
+
+		assertTrue(classifier.classify("Delve level: 3"));
+		assertEquals("fallback:3", matched.get(0));
+	}
+
+	@Test
+	public void ruleRejectingTheMessageWithNoOtherRuleRejectsIt()
+	{
+		classifier.register("Delve level: ", (message, from) -> false);
+
+		assertFalse(classifier.classify("Delve level: 3"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyLiteralIsRejected()
+	{
+		classifier.register("", record("empty"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void literalStartingWithATagIsRejected()
+	{
+		classifier.register("<col=ff0000>Delve", record("tag"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void literalStartingOutsideAsciiIsRejected()
+	{
+		classifier.register("étage", record("accent"));
+	}
+
+	@Test
+	public void parseNumberReadsDigitsFromTheGivenIndex()
+	{
+		assertEquals(1234, ChatMessageClassifier.parseNumber("count: 1234.", 7));
+		assertEquals(0, ChatMessageClassifier.parseNumber("0", 0));
+		assertEquals(214748363, ChatMessageClassifier.parseNumber("x214748363", 1));
+	}
+
+	@Test
+	public void parseNumberWithoutDigitsIsNegative()
+	{
+		assertEquals(-1, ChatMessageClassifier.parseNumber("count: ", 7));
+		assertEquals(-1, ChatMessageClassifier.parseNumber("count: -5", 7));
+		assertEquals(-1, ChatMessageClassifier.parseNumber("", 0));
+	}
+
+	@Test
+	public void parseNumberOverflowingIsNegative()
+	{
+		assertEquals(-1, ChatMessageClassifier.parseNumber("99999999999", 0));
+		assertEquals(-1, ChatMessageClassifier.parseNumber("2147483648", 0));
+	}
+
+	@Test
+	public void skipDigitsStopsAtTheFirstNonDigit()
+	{
+		assertEquals(11, ChatMessageClassifier.skipDigits("count: 1234.", 7));
+		assertEquals(7, ChatMessageClassifier.skipDigits("count: x", 7));
+		assertEquals(3, ChatMessageClassifier.skipDigits("123", 0));
+	}
+}
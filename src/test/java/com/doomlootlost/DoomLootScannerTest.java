@@ -0,0 +1,323 @@
+package com.doomlootlost;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.widgets.Widget;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class DoomLootScannerTest
+{
+	private static final int GROUP = MenuClickClassifier.LOOT_GROUP_ID;
+	private static final int PLACEHOLDER = 6512;
+
+	/**
+	 * State behind a widget proxy, changed by the tests as the client would
+	 */
+	private static class FakeWidget
+	{
+		private final int id;
+		private int itemId = -1;
+		private int quantity;
+		private Widget[] children;
+
+		FakeWidget(final int id)
+		{
+			this.id = id;
+		}
+	}
+
+	private final Map<Integer, Widget> components = new HashMap<>();
+	private final Map<Widget, FakeWidget> fakes = new HashMap<>();
+	private int widgetLookups;
+
+	private final Client client = proxy(Client.class, (method, args) ->
+	{
+		if (method.equals("getWidget") && args.length == 2 && (int) args[0] == GROUP)
+		{
+			widgetLookups++;
+			return components.get((int) args[1]);
+		}
+		return null;
+	});
+	private final DoomLootScanner scanner = new DoomLootScanner(client);
+
+	private interface Handler
+	{
+		Object invoke(String method, Object[] args);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(final Class<T> type, final Handler handler)
+	{
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+		{
+			switch (method.getName())
+			{
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return type.getSimpleName();
+				default:
+					break;
+			}
+
+			final Object value = handler.invoke(method.getName(), args == null ? new Object[0] : args);
+			if (value == null && method.getReturnType() == int.class)
+			{
+				return 0;
+			}
+			if (value == null && method.getReturnType() == boolean.class)
+			{
+				return false;
+			}
+			return value;
+		});
+	}
+
+	private Widget widget(final FakeWidget fake)
+	{
+		final Widget widget = proxy(Widget.class, (method, args) ->
+		{
+			switch (method)
+			{
+				case "getId":
+					return fake.id;
+				case "getItemId":
+					return fake.itemId;
+				case "getItemQuantity":
+					return fake.quantity;
+				case "getChildren":
+					return fake.children;
+				default:
+					return null;
+			}
+		});
+		fakes.put(widget, fake);
+		return widget;
+	}
+
+	private FakeWidget component(final int componentId)
+	{
+		final FakeWidget fake = new FakeWidget(GROUP << 16 | componentId);
+		components.put(componentId, widget(fake));
+		return fake;
+	}
+
+	/**
+	 * @param items item id and quantity pairs
+	 */
+	private FakeWidget container(final int componentId, final int... items)
+	{
+		final FakeWidget container = component(componentId);
+		container.children = new Widget[items.length / 2];
+		for (int i = 0; i < container.children.length; i++)
+		{
+			final FakeWidget slot = new FakeWidget(container.id);
+			slot.itemId = items[2 * i];
+			slot.quantity = items[2 * i + 1];
+			container.children[i] = widget(slot);
+		}
+		return container;
+	}
+
+	private FakeWidget slot(final FakeWidget container, final int i)
+	{
+		return fakes.get(container.children[i]);
+	}
+
+	private void assertItems(final int... items)
+	{
+		assertEquals(items.length / 2, scanner.size());
+		for (int i = 0; i < scanner.size(); i++)
+		{
+			assertEquals(items[2 * i], scanner.getItemId(i));
+			assertEquals(items[2 * i + 1], scanner.getQuantity(i));
+		}
+	}
+
+	@Test
+	public void containerSlotsAreReadOncePerItem()
+	{
+		component(2);
+		container(7, 100, 2, PLACEHOLDER, 1, 100, 5, 200, 0, -1, 0);
+		scanner.opened();
+
+		assertTrue(scanner.scan());
+		assertItems(100, 2, 200, 1);
+	}
+
+	@Test
+	public void containerWithTheMostItemsIsChosen()
+	{
+		container(3, 999, 1);
+		container(7, 100, 1, 200, 1);
+		scanner.opened();
+
+		assertTrue(scanner.scan());
+		assertItems(100, 1, 200, 1);
+	}
+
+	@Test
+	public void unchangedRescanOnlyLooksUpTheContainer()
+	{
+		container(7, 100, 2, 200, 1);
+		scanner.opened();
+		scanner.scan();
+
+		widgetLookups = 0;
+		assertFalse(scanner.scan());
+		assertEquals(1, widgetLookups);
+		assertItems(100, 2, 200, 1);
+	}
+
+	@Test
+	public void changedSlotsAreReported()
+	{
+		final FakeWidget container = container(7, 100, 2, PLACEHOLDER, 0);
+		scanner.opened();
+		scanner.scan();
+
+		slot(container, 1).itemId = 300;
+		slot(container, 1).quantity = 4;
+		assertTrue(scanner.scan());
+		assertItems(100, 2, 300, 4);
+
+		slot(container, 0).quantity = 3;
+		assertTrue(scanner.scan());
+		assertItems(100, 3, 300, 4);
+	}
+
+	@Test
+	public void growingContainerIsReadWhole()
+	{
+		container(7, 100, 1);
+		scanner.opened();
+		scanner.scan();
+
+		container(7, 100, 1, 200, 1, 300, 1);
+		assertTrue(scanner.scan());
+		assertItems(100, 1, 200, 1, 300, 1);
+	}
+
+	@Test
+	public void itemsSetOnComponentsAreRead()
+	{
+		final FakeWidget first = component(10);
+		first.itemId = 100;
+		first.quantity = 3;
+		final FakeWidget second = component(11);
+		second.itemId = PLACEHOLDER;
+		scanner.opened();
+
+		assertTrue(scanner.scan());
+		assertItems(100, 3);
+
+		// The placeholder's component is a slot too, items set on it later are read
+		second.itemId = 200;
+		second.quantity = 1;
+		assertTrue(scanner.scan());
+		assertItems(100, 3, 200, 1);
+	}
+
+	@Test
+	public void componentItemsAndContainerItemsAreBothRead()
+	{
+		container(7, 100, 1);
+		final FakeWidget component = component(12);
+		component.itemId = 200;
+		component.quantity = 2;
+		scanner.opened();
+
+		assertTrue(scanner.scan());
+		assertItems(100, 1, 200, 2);
+	}
+
+	@Test
+	public void interfaceWithoutItemsIsSearchedAgainOnScripts()
+	{
+		component(7);
+		scanner.opened();
+		assertFalse(scanner.scan());
+		assertFalse(scanner.scriptFinished(41));
+
+		// A script draws the items into the interface
+		final FakeWidget container = container(7, 100, 1);
+		assertTrue(scanner.scriptFinished(42));
+		assertItems(100, 1);
+
+		// Once found, only the script that drew the items causes a scan
+		slot(container, 0).quantity = 6;
+		widgetLookups = 0;
+		assertFalse(scanner.scriptFinished(41));
+		assertEquals(0, widgetLookups);
+		assertTrue(scanner.scriptFinished(42));
+		assertItems(100, 6);
+	}
+
+	@Test
+	public void scriptsRunForTheInterfaceCauseAScan()
+	{
+		final FakeWidget container = container(7, 100, 1);
+		scanner.opened();
+		scanner.scan();
+
+		scanner.scriptStarted(77, components.get(7));
+		scanner.scriptStarted(78, widget(new FakeWidget(548 << 16 | 7)));
+		scanner.scriptStarted(79, null);
+		slot(container, 0).quantity = 2;
+
+		assertFalse(scanner.scriptFinished(78));
+		assertFalse(scanner.scriptFinished(79));
+		assertTrue(scanner.scriptFinished(77));
+		assertFalse(scanner.scriptFinished(77));
+		assertItems(100, 2);
+	}
+
+	@Test
+	public void closedInterfaceIgnoresScripts()
+	{
+		container(7, 100, 1);
+		scanner.opened();
+		scanner.scriptStarted(77, components.get(7));
+		scanner.scan();
+		scanner.closed();
+
+		scanner.scriptStarted(80, components.get(7));
+		widgetLookups = 0;
+		assertFalse(scanner.isOpen());
+		assertFalse(scanner.scriptFinished(77));
+		assertFalse(scanner.scriptFinished(80));
+		assertEquals(0, widgetLookups);
+	}
+
+	@Test
+	public void reopenedInterfaceReportsItsItemsAgain()
+	{
+		container(7, 100, 1);
+		scanner.opened();
+		assertTrue(scanner.scan());
+
+		scanner.opened();
+		assertTrue(scanner.isOpen());
+		assertTrue(scanner.scan());
+		assertItems(100, 1);
+	}
+
+	@Test
+	public void interfaceWithOnlyPlaceholdersIsNotFound()
+	{
+		container(7, PLACEHOLDER, 1, -1, 0);
+		component(9).itemId = PLACEHOLDER;
+		scanner.opened();
+
+		assertFalse(scanner.scan());
+		assertEquals(0, scanner.size());
+	}
+}
@@ -0,0 +1,162 @@
+package com.doomlootlost;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class EncounterTrackerTest
+{
+	private static final int[] LOBBY = {5000, 5001};
+	private static final int[] FIRST_WAVES = {7000, 7001};
+	private static final int[] DEEPER_WAVES = {7200, 7201};
+	private static final int[] ELSEWHERE = {3200};
+
+	private final List<String> transitions = new ArrayList<>();
+	private final EncounterTracker tracker = new EncounterTracker((previous, state, ticks) ->
+		transitions.add(previous + "->" + state + ":" + ticks));
+
+	private void loadMap(final boolean bossPresent, final int[] regions, final int tick)
+	{
+		tracker.mapLoaded();
+		tracker.tick(bossPresent, regions, tick);
+	}
+
+	@Test
+	public void bossSpawnStartsTheEncounter()
+	{
+		tracker.bossSeen(FIRST_WAVES, 10);
+
+		assertEquals(EncounterState.IN_INSTANCE, tracker.getState());
+		assertTrue(tracker.isInDoomRegion(FIRST_WAVES));
+		assertEquals(1, transitions.size());
+		assertEquals("OUTSIDE->IN_INSTANCE:10", transitions.get(0));
+	}
+
+	@Test
+	public void missedSpawnIsPickedUpOnTheNextTick()
+	{
+		tracker.tick(true, FIRST_WAVES, 3);
+
+		assertEquals(EncounterState.IN_INSTANCE, tracker.getState());
+		assertTrue(tracker.isInDoomRegion(FIRST_WAVES));
+	}
+
+	@Test
+	public void idleTicksDontEndTheEncounter()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.transition(EncounterState.LOOT_OFFERED, 5);
+		for (int tick = 6; tick < 6000; tick++)
+		{
+			// The boss is gone from the scene but no map was loaded, as with lag or an idle client
+			tracker.tick(false, FIRST_WAVES, tick);
+		}
+
+		assertEquals(EncounterState.LOOT_OFFERED, tracker.getState());
+	}
+
+	@Test
+	public void loadingAnotherMapEndsTheEncounter()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.transition(EncounterState.LOOT_OFFERED, 5);
+		loadMap(false, ELSEWHERE, 20);
+
+		assertEquals(EncounterState.OUTSIDE, tracker.getState());
+		assertEquals("LOOT_OFFERED->OUTSIDE:15", transitions.get(transitions.size() - 1));
+	}
+
+	@Test
+	public void loadingMapOfTheBossKeepsTheEncounter()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.transition(EncounterState.RISKING, 5);
+		loadMap(false, FIRST_WAVES, 20);
+
+		assertEquals(EncounterState.RISKING, tracker.getState());
+	}
+
+	@Test
+	public void regionsOfDeeperWavesAreAddedWhileLootIsHeld()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.transition(EncounterState.LOOT_OFFERED, 5);
+		tracker.transition(EncounterState.RISKING, 6);
+
+		// The next wave is in another region, the boss spawns there after the map loads
+		tracker.mapLoaded();
+		tracker.bossSeen(DEEPER_WAVES, 30);
+		tracker.tick(true, DEEPER_WAVES, 30);
+		assertEquals(EncounterState.RISKING, tracker.getState());
+		assertTrue(tracker.isInDoomRegion(DEEPER_WAVES));
+
+		// Reloading the deeper region, with the boss not spawned yet, doesn't end the encounter
+		loadMap(false, DEEPER_WAVES, 40);
+		assertEquals(EncounterState.RISKING, tracker.getState());
+	}
+
+	@Test
+	public void bossSeenOnTheTickAfterLoadingAddsItsRegions()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.transition(EncounterState.LOOT_OFFERED, 5);
+		loadMap(true, DEEPER_WAVES, 30);
+
+		assertEquals(EncounterState.LOOT_OFFERED, tracker.getState());
+		assertTrue(tracker.isInDoomRegion(DEEPER_WAVES));
+	}
+
+	@Test
+	public void leavingClearsTheRegions()
+	{
+		tracker.bossSeen(LOBBY, 0);
+		loadMap(false, ELSEWHERE, 10);
+		assertEquals(EncounterState.OUTSIDE, tracker.getState());
+		assertFalse(tracker.isInDoomRegion(LOBBY));
+
+		// The next encounter in another instance only keeps its own regions
+		tracker.bossSeen(FIRST_WAVES, 20);
+		loadMap(false, LOBBY, 30);
+		assertEquals(EncounterState.OUTSIDE, tracker.getState());
+	}
+
+	@Test
+	public void bossReappearingAfterResolvingStartsAnotherEncounter()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.transition(EncounterState.LOOT_OFFERED, 5);
+		tracker.transition(EncounterState.RESOLVED, 8);
+
+		// Still in the instance, the boss being seen again without a new map doesn't restart anything
+		tracker.tick(true, FIRST_WAVES, 9);
+		assertEquals(EncounterState.RESOLVED, tracker.getState());
+
+		tracker.bossSeen(FIRST_WAVES, 12);
+		assertEquals(EncounterState.IN_INSTANCE, tracker.getState());
+		assertEquals("RESOLVED->IN_INSTANCE:4", transitions.get(transitions.size() - 1));
+	}
+
+	@Test
+	public void transitionToTheSameStateIsIgnored()
+	{
+		tracker.bossSeen(FIRST_WAVES, 0);
+		tracker.bossSeen(FIRST_WAVES, 3);
+		tracker.transition(EncounterState.IN_INSTANCE, 4);
+
+		assertEquals(1, transitions.size());
+	}
+
+	@Test
+	public void mapWithoutRegionsIsOutside()
+	{
+		tracker.bossSeen(null, 0);
+		assertEquals(EncounterState.IN_INSTANCE, tracker.getState());
+		assertFalse(tracker.isInDoomRegion(null));
+
+		loadMap(false, null, 5);
+		assertEquals(EncounterState.OUTSIDE, tracker.getState());
+	}
+}
@@ -0,0 +1,86 @@
+package com.doomlootlost;
+
+import net.runelite.api.MenuAction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class MenuClickClassifierTest
+{
+	private static final int LOOT_BUTTON = MenuClickClassifier.LOOT_GROUP_ID << 16 | 12;
+	private static final int OTHER_BUTTON = 548 << 16 | 12;
+
+	@Test
+	public void lootInterfaceButtonsAreClassifiedByTheirOption()
+	{
+		assertEquals(MenuClickClassifier.Click.CLAIM, MenuClickClassifier.classify(MenuAction.CC_OP, LOOT_BUTTON, "Claim", ""));
+		assertEquals(MenuClickClassifier.Click.RISK, MenuClickClassifier.classify(MenuAction.CC_OP, LOOT_BUTTON, "Descend", ""));
+		assertEquals(MenuClickClassifier.Click.RISK, MenuClickClassifier.classify(MenuAction.CC_OP_LOW_PRIORITY, LOOT_BUTTON, "Risk", ""));
+	}
+
+	@Test
+	public void lootInterfaceTargetIsIgnored()
+	{
+		// The item the button sits next to is no choice, only the option is
+		assertEquals(MenuClickClassifier.Click.NONE,
+			MenuClickClassifier.classify(MenuAction.CC_OP, LOOT_BUTTON, "Examine", "<col=ff9040>Claim scroll</col>"));
+	}
+
+	@Test
+	public void continueIsNeverARisk()
+	{
+		assertEquals(MenuClickClassifier.Click.NONE,
+			MenuClickClassifier.classify(MenuAction.WIDGET_CONTINUE, LOOT_BUTTON, "Continue", "Descend to the next level"));
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.CC_OP, LOOT_BUTTON, "Continue", ""));
+	}
+
+	@Test
+	public void walkingAndCancellingAreNone()
+	{
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.WALK, 0, "Walk here", "Claim"));
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.CANCEL, 0, "Cancel", "Descend"));
+	}
+
+	@Test
+	public void otherClicksFallBackToTheOptionAndTarget()
+	{
+		assertEquals(MenuClickClassifier.Click.CLAIM,
+			MenuClickClassifier.classify(MenuAction.GAME_OBJECT_FIRST_OPTION, 0, "Claim-loot", "Chest"));
+		assertEquals(MenuClickClassifier.Click.RISK,
+			MenuClickClassifier.classify(MenuAction.GAME_OBJECT_FIRST_OPTION, 0, "Climb-down", "<col=ffff>Descend rope"));
+		assertEquals(MenuClickClassifier.Click.CLAIM, MenuClickClassifier.classify(MenuAction.CC_OP, OTHER_BUTTON, "Take", "CLAIM"));
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.NPC_FIRST_OPTION, 0, "Attack", "Doom"));
+	}
+
+	@Test
+	public void riskInTheTargetAloneIsNotARisk()
+	{
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.NPC_FIRST_OPTION, 0, "Talk-to", "Risky"));
+	}
+
+	@Test
+	public void claimWinsOverRisk()
+	{
+		assertEquals(MenuClickClassifier.Click.CLAIM, MenuClickClassifier.classify(MenuAction.CC_OP, LOOT_BUTTON, "Claim risked loot", ""));
+	}
+
+	@Test
+	public void missingActionOrTextIsNone()
+	{
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(null, LOOT_BUTTON, "Claim", ""));
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.CC_OP, LOOT_BUTTON, null, null));
+		assertEquals(MenuClickClassifier.Click.NONE, MenuClickClassifier.classify(MenuAction.WIDGET_TARGET, 0, null, null));
+	}
+
+	@Test
+	public void containsIgnoreCaseMatchesAnywhereInAnyCase()
+	{
+		assertTrue(MenuClickClassifier.containsIgnoreCase("Claim", "claim"));
+		assertTrue(MenuClickClassifier.containsIgnoreCase("<col=ff>DESCEND</col>", "descend"));
+		assertTrue(MenuClickClassifier.containsIgnoreCase("Re-claim", "claim"));
+		assertFalse(MenuClickClassifier.containsIgnoreCase("Clai", "claim"));
+		assertFalse(MenuClickClassifier.containsIgnoreCase("", "claim"));
+		assertFalse(MenuClickClassifier.containsIgnoreCase(null, "claim"));
+	}
+}
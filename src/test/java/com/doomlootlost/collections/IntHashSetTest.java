@@ -0,0 +1,88 @@
+package com.doomlootlost.collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IntHashSetTest
+{
+    @Test
+    public void addReportsWhetherTheValueIsNew()
+    {
+        final IntHashSet set = new IntHashSet();
+
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.add(0));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(0));
+        assertFalse(set.contains(6));
+    }
+
+    @Test
+    public void growsPastItsCapacityInInsertionOrder()
+    {
+        final IntHashSet set = new IntHashSet(1);
+        final int[] expected = new int[500];
+        for (int i = 0; i < expected.length; i++)
+        {
+            expected[i] = (i * 7919) % 1000 - 500;
+            assertTrue(set.add(expected[i]));
+        }
+
+        assertEquals(expected.length, set.size());
+        assertArrayEquals(expected, set.toArray());
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals(expected[i], set.get(i));
+            assertTrue(set.contains(expected[i]));
+        }
+    }
+
+    @Test
+    public void sortedArrayIsInValueOrder()
+    {
+        final IntHashSet set = new IntHashSet(2);
+        for (int value : new int[]{30, -4, 7, 1_000_000, 0, 7, Integer.MIN_VALUE})
+        {
+            set.add(value);
+        }
+
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, -4, 0, 7, 30, 1_000_000}, set.toSortedArray());
+        // Listing them in order leaves insertion order alone
+        assertArrayEquals(new int[]{30, -4, 7, 1_000_000, 0, Integer.MIN_VALUE}, set.toArray());
+    }
+
+    @Test
+    public void collidingValuesAreAllKept()
+    {
+        final int[] values = IntTablesTest.collidingKeys(IntTables.tableLength(IntTables.DEFAULT_CAPACITY), 6);
+        final IntHashSet set = new IntHashSet();
+        for (int i = 0; i < values.length - 1; i++)
+        {
+            assertTrue(set.add(values[i]));
+        }
+
+        for (int i = 0; i < values.length - 1; i++)
+        {
+            assertFalse(set.add(values[i]));
+        }
+        assertFalse(set.contains(values[values.length - 1]));
+    }
+
+    @Test
+    public void clearEmptiesTheSet()
+    {
+        final IntHashSet set = new IntHashSet();
+        set.add(1);
+        set.add(2);
+        set.clear();
+
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(1));
+        assertEquals(0, set.toArray().length);
+        assertTrue(set.add(1));
+    }
+}
@@ -0,0 +1,73 @@
+package com.doomlootlost.collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IntIntMapTest
+{
+    @Test
+    public void putKeepsValuesWhenAddingTheKeyGrowsTheMap()
+    {
+        final IntIntMap map = new IntIntMap(1);
+        for (int key = 0; key < 100; key++)
+        {
+            map.put(key, key + 1);
+        }
+
+        assertEquals(100, map.size());
+        for (int key = 0; key < 100; key++)
+        {
+            assertEquals(key + 1, map.get(key));
+        }
+        assertEquals(0, map.get(100));
+    }
+
+    @Test
+    public void collidingKeysKeepTheirOwnValues()
+    {
+        final int[] keys = IntTablesTest.collidingKeys(IntTables.tableLength(IntTables.DEFAULT_CAPACITY), 6);
+        final IntIntMap map = new IntIntMap();
+        for (int i = 0; i < keys.length - 1; i++)
+        {
+            map.addTo(keys[i], i);
+            map.addTo(keys[i], i);
+        }
+
+        for (int i = 0; i < keys.length - 1; i++)
+        {
+            assertEquals(i * 2, map.get(keys[i]));
+        }
+        assertFalse(map.containsKey(keys[keys.length - 1]));
+        assertEquals(-1, map.getOrDefault(keys[keys.length - 1], -1));
+    }
+
+    @Test
+    public void keysByValueAreHighestFirstWithTiesInInsertionOrder()
+    {
+        final IntIntMap map = new IntIntMap();
+        map.put(7, 1);
+        map.put(8, 3);
+        map.put(9, 1);
+        map.addTo(7, 2);
+
+        assertArrayEquals(new int[]{7, 8, 9}, map.keysByValue());
+        assertArrayEquals(new int[]{7, 8, 9}, new int[]{map.keyAt(0), map.keyAt(1), map.keyAt(2)});
+    }
+
+    @Test
+    public void clearForgetsEveryKey()
+    {
+        final IntIntMap map = new IntIntMap();
+        map.put(1, 5);
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(1));
+        map.put(2, 4);
+        assertEquals(2, map.keyAt(0));
+        assertEquals(4, map.valueAt(0));
+    }
+}
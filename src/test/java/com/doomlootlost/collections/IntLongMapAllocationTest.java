@@ -0,0 +1,87 @@
+package com.doomlootlost.collections;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ * Totals item quantities by id in an {@link IntLongMap} and in a boxed {@link HashMap}, the way loss statistics are folded over
+ * the history, and checks the primitive map allocates next to nothing per item where the boxed one allocates for every item.
+ * Skipped on JVMs that can't count the bytes a thread allocates.
+ */
+public class IntLongMapAllocationTest
+{
+    private static final int ITEMS = 200_000;
+    // Distinct item ids in a large history
+    private static final int DISTINCT_IDS = 500;
+    private static final int WARMUP_ROUNDS = 5;
+
+    private final int[] ids = new int[ITEMS];
+    private final int[] quantities = new int[ITEMS];
+
+    public IntLongMapAllocationTest()
+    {
+        final Random random = new Random(1);
+        for (int i = 0; i < ITEMS; i++)
+        {
+            // Item ids are clustered rather than spread over the int range
+            ids[i] = 20_000 + random.nextInt(DISTINCT_IDS) * 3;
+            quantities[i] = 1 + random.nextInt(100);
+        }
+    }
+
+    @Test
+    public void primitiveMapDoesNotAllocatePerItem()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        long sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++)
+        {
+            sink += primitive() + boxed();
+        }
+
+        final long thread = Thread.currentThread().getId();
+        long bytes = allocations.getThreadAllocatedBytes(thread);
+        sink += primitive();
+        final long primitiveBytes = allocations.getThreadAllocatedBytes(thread) - bytes;
+
+        bytes = allocations.getThreadAllocatedBytes(thread);
+        sink += boxed();
+        final long boxedBytes = allocations.getThreadAllocatedBytes(thread) - bytes;
+
+        assertTrue(sink != 0);
+        // Only the tables of the map are allocated, not a byte per item
+        assertTrue("IntLongMap allocated " + primitiveBytes + " bytes", primitiveBytes < ITEMS);
+        // Every boxed total and most boxed keys are a new object
+        assertTrue("HashMap allocated " + boxedBytes + " bytes", boxedBytes > 8L * ITEMS);
+    }
+
+    private long primitive()
+    {
+        final IntLongMap totals = new IntLongMap();
+        for (int i = 0; i < ids.length; i++)
+        {
+            totals.addTo(ids[i], quantities[i]);
+        }
+        return totals.size() + totals.get(ids[0]);
+    }
+
+    private long boxed()
+    {
+        final Map<Integer, Long> totals = new HashMap<>();
+        for (int i = 0; i < ids.length; i++)
+        {
+            totals.merge(ids[i], (long) quantities[i], Long::sum);
+        }
+        return totals.size() + totals.get(ids[0]);
+    }
+}
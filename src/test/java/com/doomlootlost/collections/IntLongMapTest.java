@@ -0,0 +1,156 @@
+package com.doomlootlost.collections;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IntLongMapTest
+{
+    @Test
+    public void unmappedKeysReadAsDefault()
+    {
+        final IntLongMap map = new IntLongMap();
+        map.put(1, 10);
+
+        assertEquals(0, map.get(2));
+        assertEquals(-1, map.getOrDefault(2, -1));
+        assertFalse(map.containsKey(2));
+        // 0 is a key like any other, not the marker of a free slot
+        assertFalse(map.containsKey(0));
+        map.put(0, 7);
+        assertEquals(7, map.get(0));
+    }
+
+    @Test
+    public void putKeepsValuesWhenAddingTheKeyGrowsTheMap()
+    {
+        final IntLongMap map = new IntLongMap(1);
+        for (int key = 0; key < 100; key++)
+        {
+            map.put(key, key * 10L);
+        }
+
+        assertEquals(100, map.size());
+        for (int key = 0; key < 100; key++)
+        {
+            assertEquals(key * 10L, map.get(key));
+        }
+    }
+
+    @Test
+    public void addToGrowsPastTheDefaultCapacity()
+    {
+        final IntLongMap map = new IntLongMap();
+        for (int round = 0; round < 3; round++)
+        {
+            for (int key = 0; key < 1000; key++)
+            {
+                map.addTo(key, key);
+            }
+        }
+
+        assertEquals(1000, map.size());
+        for (int key = 0; key < 1000; key++)
+        {
+            assertEquals(key * 3L, map.get(key));
+        }
+    }
+
+    @Test
+    public void collidingKeysKeepTheirOwnValues()
+    {
+        final int[] keys = IntTablesTest.collidingKeys(IntTables.tableLength(IntTables.DEFAULT_CAPACITY), 6);
+        final IntLongMap map = new IntLongMap();
+        for (int i = 0; i < keys.length - 1; i++)
+        {
+            map.put(keys[i], i);
+        }
+
+        for (int i = 0; i < keys.length - 1; i++)
+        {
+            assertEquals(i, map.get(keys[i]));
+        }
+        assertFalse(map.containsKey(keys[keys.length - 1]));
+    }
+
+    @Test
+    public void entriesAreInInsertionOrder()
+    {
+        final IntLongMap map = new IntLongMap();
+        map.put(30, 1);
+        map.put(10, 2);
+        map.put(20, 3);
+        map.put(10, 4);
+
+        assertEquals(3, map.size());
+        assertArrayEquals(new int[]{30, 10, 20}, new int[]{map.keyAt(0), map.keyAt(1), map.keyAt(2)});
+        assertArrayEquals(new long[]{1, 4, 3}, new long[]{map.valueAt(0), map.valueAt(1), map.valueAt(2)});
+    }
+
+    @Test
+    public void keysByValueAreHighestFirstWithTiesInInsertionOrder()
+    {
+        final IntLongMap map = new IntLongMap();
+        map.put(1, 5);
+        map.put(2, 9);
+        map.put(3, 5);
+        map.put(4, -1);
+        map.put(5, 9);
+
+        assertArrayEquals(new int[]{2, 5, 1, 3, 4}, map.keysByValue());
+    }
+
+    @Test
+    public void clearForgetsEveryKey()
+    {
+        final IntLongMap map = new IntLongMap();
+        map.put(1, 5);
+        map.put(2, 6);
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(1));
+        assertEquals(0, map.keysByValue().length);
+        assertEquals(3, map.addTo(2, 3));
+    }
+
+    @Test
+    public void matchesLinkedHashMap()
+    {
+        final Random random = new Random(13);
+        for (int round = 0; round < 50; round++)
+        {
+            final IntLongMap map = new IntLongMap(1 + random.nextInt(8));
+            final Map<Integer, Long> expected = new LinkedHashMap<>();
+            final int operations = random.nextInt(2000);
+            for (int i = 0; i < operations; i++)
+            {
+                final int key = random.nextInt(400) - 50;
+                final long delta = random.nextInt(1000);
+                map.addTo(key, delta);
+                expected.merge(key, delta, Long::sum);
+            }
+
+            assertEquals(expected.size(), map.size());
+            int i = 0;
+            for (Map.Entry<Integer, Long> entry : expected.entrySet())
+            {
+                assertEquals((int) entry.getKey(), map.keyAt(i));
+                assertEquals((long) entry.getValue(), map.valueAt(i));
+                assertEquals((long) entry.getValue(), map.get(entry.getKey()));
+                i++;
+            }
+
+            final List<Integer> byValue = new ArrayList<>(expected.keySet());
+            byValue.sort((a, b) -> Long.compare(expected.get(b), expected.get(a)));
+            assertArrayEquals(byValue.stream().mapToInt(Integer::intValue).toArray(), map.keysByValue());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.doomlootlost.collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IntTablesTest
+{
+    /**
+     * @return count distinct keys that all hash to the same slot of a table of the given length
+     */
+    static int[] collidingKeys(final int tableLength, final int count)
+    {
+        final int mask = tableLength - 1;
+        final int[] keys = new int[count];
+        int found = 0;
+        for (int key = 1; found < count; key++)
+        {
+            if ((IntTables.mix(key) & mask) == (IntTables.mix(1) & mask))
+            {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void tableLengthIsAPowerOfTwoAtMostHalfFull()
+    {
+        for (int capacity = 0; capacity < 1000; capacity++)
+        {
+            final int length = IntTables.tableLength(capacity);
+            assertEquals(0, length & (length - 1));
+            assertTrue(length >= capacity * 2);
+        }
+    }
+
+    @Test
+    public void findProbesPastCollidingKeys()
+    {
+        final int[] keys = collidingKeys(16, 3);
+        final int[] table = IntTables.rehash(keys, keys.length, 16);
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            assertEquals(i + 1, table[IntTables.find(table, keys, keys[i])]);
+        }
+        assertEquals(0, table[IntTables.find(table, keys, collidingKeys(16, 4)[3])]);
+    }
+
+    @Test
+    public void orderDescendingKeepsTiesInInsertionOrder()
+    {
+        final long[] rank = {5, 9, 5, 1, 9, 5, 0};
+        assertArrayEquals(new int[]{1, 4, 0, 2, 5, 3, 6}, IntTables.orderDescending(rank, rank.length));
+        assertArrayEquals(new int[]{1, 0, 2}, IntTables.orderDescending(rank, 3));
+        assertArrayEquals(new int[0], IntTables.orderDescending(rank, 0));
+    }
+}
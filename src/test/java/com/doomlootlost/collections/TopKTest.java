@@ -0,0 +1,96 @@
+package com.doomlootlost.collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TopKTest
+{
+    @Test
+    public void keepsTheHighestScores()
+    {
+        final TopK top = new TopK(3, false);
+        final long[] scores = {4, 8, 1, 9, 3, 7, 2};
+        for (int key = 0; key < scores.length; key++)
+        {
+            top.offer(key, scores[key]);
+        }
+
+        assertEquals(3, top.size());
+        assertArrayEquals(new int[]{3, 1, 5}, top.keys());
+    }
+
+    @Test
+    public void tyingTheLowestScoreDoesNotReplaceIt()
+    {
+        final TopK top = new TopK(2, false);
+        top.offer(1, 5);
+        top.offer(2, 3);
+        top.offer(3, 3);
+
+        assertArrayEquals(new int[]{1, 2}, top.keys());
+    }
+
+    @Test
+    public void updatableHeapFollowsGrowingScores()
+    {
+        final TopK top = new TopK(2, true);
+        top.offer(1, 10);
+        top.offer(2, 20);
+        top.offer(3, 15);
+        // Already in the heap, its new score moves it rather than adding it twice
+        top.offer(3, 30);
+        top.offer(1, 25);
+
+        assertEquals(2, top.size());
+        assertArrayEquals(new int[]{3, 1}, top.keys());
+    }
+
+    @Test
+    public void clearEmptiesTheHeap()
+    {
+        final TopK top = new TopK(2, true);
+        top.offer(1, 10);
+        top.clear();
+        top.offer(1, 5);
+
+        assertArrayEquals(new int[]{1}, top.keys());
+    }
+
+    @Test
+    public void lowestIsTheKeyAHigherScoreReplaces()
+    {
+        final TopK top = new TopK(3, false);
+        top.offer(1, 20);
+        top.offer(2, 5);
+        assertFalse(top.isFull());
+        top.offer(3, 10);
+
+        assertTrue(top.isFull());
+        assertEquals(2, top.lowestKey());
+        assertEquals(5, top.lowestScore());
+
+        top.offer(4, 15);
+        assertEquals(3, top.lowestKey());
+        assertEquals(10, top.lowestScore());
+        assertArrayEquals(new int[]{1, 4, 3}, top.keys());
+    }
+
+    @Test(expected = java.util.NoSuchElementException.class)
+    public void emptyHeapHasNoLowestKey()
+    {
+        new TopK(2, false).lowestKey();
+    }
+
+    @Test
+    public void zeroCapacityKeepsNothing()
+    {
+        final TopK top = new TopK(0, false);
+        top.offer(1, 10);
+
+        assertEquals(0, top.size());
+        assertEquals(0, top.keys().length);
+    }
+}
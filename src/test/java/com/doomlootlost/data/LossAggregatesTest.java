@@ -0,0 +1,101 @@
+package com.doomlootlost.data;
+
+import com.doomlootlost.localstorage.LTItemEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LossAggregatesTest
+{
+    private static RiskedLootRecord record(final boolean lost, final LTItemEntry... items)
+    {
+        final long value = Arrays.stream(items).mapToLong(item -> item.getPrice() * item.getQuantity()).sum();
+        return new RiskedLootRecord(Arrays.asList(items), new Date(1_700_000_000_000L), 5, value, lost);
+    }
+
+    private static List<Integer> ids(final List<LossAggregates.ItemTotal> items)
+    {
+        return items.stream().map(LossAggregates.ItemTotal::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void totalsOnlyLostRecords()
+    {
+        final LossAggregates aggregates = new LossAggregates();
+        aggregates.add(record(true, new LTItemEntry("Coins", 995, 500, 1), new LTItemEntry("Oathplate helm", 30750, 1, 40_000)));
+        aggregates.add(record(false, new LTItemEntry("Coins", 995, 10_000_000, 1)));
+        aggregates.add(record(true, new LTItemEntry("Coins", 995, 250, 1)));
+
+        final List<LossAggregates.ItemTotal> items = aggregates.getItems();
+        assertEquals(Arrays.asList(995, 30750), ids(items));
+        assertEquals(750, items.get(0).getQuantity());
+        assertEquals(750, items.get(0).getValue());
+        assertEquals(40_000, items.get(1).getValue());
+    }
+
+    @Test
+    public void mostLostFollowsGrowingTotals()
+    {
+        final LossAggregates aggregates = new LossAggregates();
+        aggregates.add(record(true, new LTItemEntry("Coins", 995, 100, 1), new LTItemEntry("Oathplate helm", 30750, 1, 500)));
+        assertEquals(Arrays.asList(30750, 995), ids(aggregates.getMostLost()));
+
+        aggregates.add(record(true, new LTItemEntry("Coins", 995, 1000, 1)));
+        assertEquals(Arrays.asList(995, 30750), ids(aggregates.getMostLost()));
+        assertEquals(1100, aggregates.getMostLost().get(0).getValue());
+    }
+
+    @Test
+    public void mostLostIsBounded()
+    {
+        final LossAggregates aggregates = new LossAggregates();
+        for (int id = 1; id <= LossAggregates.MOST_LOST_SIZE + 20; id++)
+        {
+            aggregates.add(record(true, new LTItemEntry("Item " + id, id, 1, id * 10L)));
+        }
+
+        final List<LossAggregates.ItemTotal> mostLost = aggregates.getMostLost();
+        assertEquals(LossAggregates.MOST_LOST_SIZE, mostLost.size());
+        assertEquals(LossAggregates.MOST_LOST_SIZE + 20, mostLost.get(0).getId());
+        assertEquals(21, mostLost.get(mostLost.size() - 1).getId());
+        assertEquals(LossAggregates.MOST_LOST_SIZE + 20, aggregates.getItems().size());
+    }
+
+    @Test
+    public void nothingLostRanksNothing()
+    {
+        final LossAggregates aggregates = new LossAggregates();
+        aggregates.add(record(false, new LTItemEntry("Coins", 995, 100, 1)));
+
+        assertTrue(aggregates.getMostLost().isEmpty());
+        assertEquals(Collections.emptyList(), aggregates.getItems());
+    }
+
+    @Test
+    public void restoredAggregatesCarryOnLikeTheOriginal()
+    {
+        final LossAggregates original = new LossAggregates();
+        for (int id = 1; id <= LossAggregates.MOST_LOST_SIZE + 5; id++)
+        {
+            // Prices change between losses, the restored value keeps what each loss was worth
+            original.add(record(true, new LTItemEntry("Item " + id, id, 2, id * 10L)));
+            original.add(record(true, new LTItemEntry("Item " + id, id, 1, id * 7L)));
+        }
+
+        final LossAggregates restored = LossAggregates.of(original.getItems());
+        assertEquals(ids(original.getItems()), ids(restored.getItems()));
+        assertEquals(ids(original.getMostLost()), ids(restored.getMostLost()));
+        assertEquals(original.getItems().get(3).getValue(), restored.getItems().get(3).getValue());
+        assertEquals(original.getItems().get(3).getQuantity(), restored.getItems().get(3).getQuantity());
+
+        original.add(record(true, new LTItemEntry("Item 1", 1, 1000, 10)));
+        restored.add(record(true, new LTItemEntry("Item 1", 1, 1000, 10)));
+        assertEquals(ids(original.getMostLost()), ids(restored.getMostLost()));
+        assertEquals(1, restored.getMostLost().get(0).getId());
+    }
+}
@@ -0,0 +1,100 @@
+package com.doomlootlost.data;
+
+import com.doomlootlost.localstorage.LTItemEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LossRankingsTest
+{
+    static RiskedLootRecord record(final int wave, final long value, final boolean lost)
+    {
+        return new RiskedLootRecord(Collections.singletonList(new LTItemEntry("Coins", 995, (int) Math.min(value, Integer.MAX_VALUE), 1)),
+            new Date(1_700_000_000_000L + wave * 60_000L), wave, value, lost);
+    }
+
+    @Test
+    public void keepsTheMostValuableLossesAndDeepestWaves()
+    {
+        final Random random = new Random(3);
+        final List<RiskedLootRecord> records = new ArrayList<>();
+        final LossRankings rankings = new LossRankings();
+        for (int i = 0; i < 200; i++)
+        {
+            final RiskedLootRecord record = record(1 + random.nextInt(60), 1 + random.nextInt(1_000_000), random.nextBoolean());
+            records.add(record);
+            rankings.add(record);
+        }
+
+        final List<Long> expectedValues = records.stream()
+            .filter(RiskedLootRecord::isWasLost)
+            .map(RiskedLootRecord::getTotalValue)
+            .sorted(Comparator.reverseOrder())
+            .limit(LossRankings.RANKING_SIZE)
+            .collect(Collectors.toList());
+        assertEquals(expectedValues, rankings.getMostValuableLosses().stream().map(RiskedLootRecord::getTotalValue).collect(Collectors.toList()));
+        assertTrue(rankings.getMostValuableLosses().stream().allMatch(RiskedLootRecord::isWasLost));
+
+        final List<Integer> expectedWaves = records.stream()
+            .map(RiskedLootRecord::getWave)
+            .sorted(Comparator.reverseOrder())
+            .limit(LossRankings.RANKING_SIZE)
+            .collect(Collectors.toList());
+        assertEquals(expectedWaves, rankings.getDeepestWaves().stream().map(RiskedLootRecord::getWave).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void invalidRecordsAreNotRanked()
+    {
+        final LossRankings rankings = new LossRankings();
+        rankings.add(new RiskedLootRecord(Collections.emptyList(), new Date(), 40, 0, true));
+
+        assertTrue(rankings.getMostValuableLosses().isEmpty());
+        assertTrue(rankings.getDeepestWaves().isEmpty());
+    }
+
+    @Test
+    public void publishedRankingIsNotChangedByLaterRecords()
+    {
+        final LossRankings rankings = new LossRankings();
+        rankings.add(record(3, 100, true));
+        final List<RiskedLootRecord> before = rankings.getMostValuableLosses();
+        rankings.add(record(4, 200, true));
+
+        assertEquals(1, before.size());
+        assertEquals(2, rankings.getMostValuableLosses().size());
+        assertEquals(200, rankings.getMostValuableLosses().get(0).getTotalValue());
+    }
+
+    @Test
+    public void restoredRankingsCarryOnLikeTheOriginal()
+    {
+        final Random random = new Random(5);
+        final LossRankings original = new LossRankings();
+        for (int i = 0; i < 100; i++)
+        {
+            original.add(record(1 + random.nextInt(40), 1 + random.nextInt(1_000_000), random.nextBoolean()));
+        }
+
+        final LossRankings restored = LossRankings.of(original.getMostValuableLosses(), original.getDeepestWaves());
+        assertEquals(original.getMostValuableLosses(), restored.getMostValuableLosses());
+        assertEquals(original.getDeepestWaves(), restored.getDeepestWaves());
+
+        for (int i = 0; i < 50; i++)
+        {
+            final RiskedLootRecord record = record(1 + random.nextInt(60), 1 + random.nextInt(2_000_000), random.nextBoolean());
+            original.add(record);
+            restored.add(record);
+        }
+        assertEquals(original.getMostValuableLosses(), restored.getMostValuableLosses());
+        assertEquals(original.getDeepestWaves().stream().map(RiskedLootRecord::getWave).collect(Collectors.toList()),
+            restored.getDeepestWaves().stream().map(RiskedLootRecord::getWave).collect(Collectors.toList()));
+    }
+}
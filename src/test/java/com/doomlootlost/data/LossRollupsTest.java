@@ -0,0 +1,91 @@
+package com.doomlootlost.data;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class LossRollupsTest
+{
+    private static long utc(final String dateTime)
+    {
+        return ZonedDateTime.parse(dateTime + "Z").toInstant().toEpochMilli();
+    }
+
+    private static RiskedLootRecord record(final long timestamp, final int wave, final long value, final boolean lost)
+    {
+        final RiskedLootRecord record = LossRankingsTest.record(wave, value, lost);
+        record.getTimestamp().setTime(timestamp);
+        return record;
+    }
+
+    @Test
+    public void periodsStartAtMidnightUtc()
+    {
+        // A Wednesday evening
+        final long timestamp = utc("2025-10-15T23:30:00");
+
+        assertEquals(utc("2025-10-15T00:00:00"), LossRollups.Period.DAY.start(timestamp));
+        assertEquals(utc("2025-10-13T00:00:00"), LossRollups.Period.WEEK.start(timestamp));
+        assertEquals(utc("2025-10-01T00:00:00"), LossRollups.Period.MONTH.start(timestamp));
+    }
+
+    @Test
+    public void recordsAndDeathsAreCountedInEveryPeriod()
+    {
+        final LossRollups rollups = new LossRollups();
+        rollups.add(record(utc("2025-10-13T10:00:00"), 4, 1_000, false));
+        rollups.add(record(utc("2025-10-14T10:00:00"), 7, 5_000, true));
+        rollups.addDeath(utc("2025-10-14T10:00:00"));
+        rollups.addDeath(utc("2025-10-14T11:00:00"));
+
+        final List<LossRollups.Bucket> weeks = rollups.getBuckets(LossRollups.Period.WEEK);
+        assertEquals(1, weeks.size());
+        final LossRollups.Bucket week = weeks.get(0);
+        assertEquals(utc("2025-10-13T00:00:00"), week.getStart());
+        assertEquals(2, week.getDeaths());
+        assertEquals(1, week.getLosses());
+        assertEquals(1, week.getClaims());
+        assertEquals(5_000, week.getValueLost());
+        assertEquals(1_000, week.getValueClaimed());
+        assertEquals(7, week.getHighestWave());
+
+        final List<LossRollups.Bucket> days = rollups.getBuckets(LossRollups.Period.DAY);
+        assertEquals(2, days.size());
+        assertEquals(0, days.get(0).getDeaths());
+        assertEquals(2, days.get(1).getDeaths());
+        assertEquals(2, rollups.getBuckets(LossRollups.Period.MONTH).get(0).getDeaths());
+    }
+
+    @Test
+    public void recordsOutOfOrderLandInTheirOwnBucket()
+    {
+        final LossRollups rollups = new LossRollups();
+        rollups.addDeath(utc("2025-10-20T10:00:00"));
+        rollups.addDeath(utc("2025-10-06T10:00:00"));
+        rollups.addDeath(utc("2025-10-13T10:00:00"));
+
+        final List<LossRollups.Bucket> weeks = rollups.getBuckets(LossRollups.Period.WEEK);
+        assertEquals(3, weeks.size());
+        assertEquals(utc("2025-10-06T00:00:00"), weeks.get(0).getStart());
+        assertEquals(utc("2025-10-13T00:00:00"), weeks.get(1).getStart());
+        assertEquals(utc("2025-10-20T00:00:00"), weeks.get(2).getStart());
+    }
+
+    @Test
+    public void bucketsAreSelectedByTheirStart()
+    {
+        final LossRollups rollups = new LossRollups();
+        rollups.addDeath(utc("2025-10-06T10:00:00"));
+        rollups.addDeath(utc("2025-10-13T10:00:00"));
+        rollups.addDeath(utc("2025-10-20T10:00:00"));
+
+        final List<LossRollups.Bucket> weeks = rollups.getBuckets(LossRollups.Period.WEEK, utc("2025-10-10T00:00:00"), utc("2025-10-20T00:00:00"));
+        assertEquals(2, weeks.size());
+        assertEquals(utc("2025-10-13T00:00:00"), weeks.get(0).getStart());
+
+        // Copies, changing them leaves the rollups alone
+        weeks.get(0).setDeaths(100);
+        assertEquals(1, rollups.getBuckets(LossRollups.Period.WEEK).get(1).getDeaths());
+    }
+}
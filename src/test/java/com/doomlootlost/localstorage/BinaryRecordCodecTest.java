@@ -0,0 +1,104 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.RiskedLootRecord;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BinaryRecordCodecTest
+{
+    static RiskedLootRecord record(final long timestamp, final boolean lost, final LTItemEntry... items)
+    {
+        return new RiskedLootRecord(Arrays.asList(items), new Date(timestamp), 3, 123_456L, lost);
+    }
+
+    @Test
+    public void recordsRoundTrip()
+    {
+        final RiskedLootRecord record = record(1_700_000_000_000L, true,
+            new LTItemEntry("Oathplate helm", 30750, 1, 42_000_000L),
+            new LTItemEntry("Coins", 995, Integer.MAX_VALUE, 1),
+            new LTItemEntry("Tumeken's shadow", 27275, 1, Long.MAX_VALUE));
+
+        final ByteBuffer buffer = ByteBuffer.wrap(BinaryRecordCodec.encode(record, new HashSet<>()));
+        assertEquals(record, BinaryRecordCodec.decode(buffer, new HashMap<>(), BinaryRecordCodec.VERSION));
+        assertNull(BinaryRecordCodec.decode(buffer, new HashMap<>(), BinaryRecordCodec.VERSION));
+    }
+
+    @Test
+    public void namesAreWrittenOnceAndSharedByLaterRecords()
+    {
+        final Set<Integer> named = new HashSet<>();
+        final byte[] first = BinaryRecordCodec.encode(record(1, false, new LTItemEntry("Coins", 995, 10, 1)), named);
+        final byte[] second = BinaryRecordCodec.encode(record(2, false, new LTItemEntry("Coins", 995, 20, 1)), named);
+        assertTrue(second.length < first.length);
+
+        final Map<Integer, String> names = new HashMap<>();
+        final ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length).put(first).put(second);
+        buffer.flip();
+        BinaryRecordCodec.decode(buffer, names, BinaryRecordCodec.VERSION);
+        assertEquals("Coins", BinaryRecordCodec.decode(buffer, names, BinaryRecordCodec.VERSION).getItems().get(0).getName());
+
+        // Without the first record the name is unknown
+        assertNull(BinaryRecordCodec.decode(ByteBuffer.wrap(second), new HashMap<>(), BinaryRecordCodec.VERSION).getItems().get(0).getName());
+    }
+
+    @Test
+    public void unknownNamesAreNotWritten()
+    {
+        final Set<Integer> named = new HashSet<>();
+        final RiskedLootRecord record = record(1, false, new LTItemEntry(ItemDictionary.unknownName(995), 995, 10, 1));
+        final RiskedLootRecord decoded = BinaryRecordCodec.decode(ByteBuffer.wrap(BinaryRecordCodec.encode(record, named)), new HashMap<>(),
+            BinaryRecordCodec.VERSION);
+
+        assertTrue(named.isEmpty());
+        assertNull(decoded.getItems().get(0).getName());
+    }
+
+    @Test
+    public void varLongsRoundTripAtEveryLength()
+    {
+        final long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 1L << 56, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        final int[] lengths = {1, 1, 1, 2, 2, 3, 5, 9, 9, 10, 10};
+        for (int i = 0; i < values.length; i++)
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryRecordCodec.writeVarLong(out, values[i]);
+            assertEquals("length of " + values[i], lengths[i], out.size());
+
+            final ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            assertEquals(values[i], BinaryRecordCodec.readVarLong(buffer));
+            assertEquals(0, buffer.remaining());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void varLongWithoutAnEndIsMalformed()
+    {
+        final byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+        BinaryRecordCodec.readVarLong(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void headerIdentifiesTheVersion()
+    {
+        final ByteBuffer header = ByteBuffer.wrap(BinaryRecordCodec.header());
+        assertEquals(BinaryRecordCodec.VERSION, BinaryRecordCodec.readHeader(header));
+        assertEquals(BinaryRecordCodec.HEADER_LENGTH, header.position());
+
+        final byte[] unsupported = BinaryRecordCodec.header();
+        unsupported[BinaryRecordCodec.HEADER_LENGTH - 1] = 9;
+        assertEquals(-1, BinaryRecordCodec.readHeader(ByteBuffer.wrap(unsupported)));
+        assertEquals(-1, BinaryRecordCodec.readHeader(ByteBuffer.wrap("{\"items\"".getBytes())));
+    }
+}
@@ -0,0 +1,456 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.LossAggregates;
+import com.doomlootlost.data.LossRollups;
+import com.doomlootlost.data.RiskedLootHistory;
+import com.doomlootlost.data.RiskedLootRecord;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LootLostWriterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = RiskedLootLogReaderTest.gson(new ItemDictionary());
+
+    private final List<LootLostWriter> writers = new ArrayList<>();
+
+    @After
+    public void stopWriters()
+    {
+        writers.forEach(LootLostWriter::shutDown);
+    }
+
+    /**
+     * @return a writer logged in to a fresh player folder of the format
+     */
+    private LootLostWriter writer(final RecordFormat format) throws IOException
+    {
+        final LootLostWriter writer = new LootLostWriter(folder.newFolder());
+        writers.add(writer);
+        writer.setPreferredFormat(format);
+        writer.setPlayerUsername("player");
+        return writer;
+    }
+
+    /**
+     * Add the records and wait until they are written
+     */
+    private static void add(final LootLostWriter writer, final List<RiskedLootRecord> records) throws Exception
+    {
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (RiskedLootRecord record : records)
+        {
+            futures.add(writer.addRiskedLootRecord(record));
+        }
+        for (CompletableFuture<Boolean> future : futures)
+        {
+            assertTrue(future.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Write a binary active segment of the frames, indexing every frame
+     */
+    private File binarySegment(final byte[]... frames) throws IOException
+    {
+        final File file = new File(folder.getRoot(), RecordFormat.BINARY.getFileName());
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        long offset = BinaryRecordCodec.HEADER_LENGTH;
+        for (int i = 0; i < frames.length; i++)
+        {
+            index.write(TimestampIndex.entry(i, offset));
+            offset += frames[i].length;
+        }
+        Files.write(file.toPath(), RiskedLootLogReaderTest.concat(BinaryRecordCodec.header(), RiskedLootLogReaderTest.concat(frames)));
+        Files.write(TimestampIndex.fileFor(file).toPath(), index.toByteArray());
+        return file;
+    }
+
+    private List<RiskedLootRecord> read(final File file, final RecordFormat format) throws IOException
+    {
+        final List<RiskedLootRecord> records = new ArrayList<>();
+        RiskedLootLogReader.read(file, format, gson).forEachRemaining(records::add);
+        return records;
+    }
+
+    @Test
+    public void missingSegmentIsAppendable()
+    {
+        assertTrue(LootLostWriter.recoverActiveSegment(new File(folder.getRoot(), RecordFormat.BINARY.getFileName()), RecordFormat.BINARY, gson));
+    }
+
+    @Test
+    public void tornBinaryTailIsCutOffWithItsIndexEntry() throws IOException
+    {
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(3);
+        final List<byte[]> frames = RiskedLootLogReaderTest.frames(records);
+        final byte[] torn = Arrays.copyOf(frames.get(2), 5);
+        final File file = binarySegment(frames.get(0), frames.get(1), torn);
+        final long intact = file.length() - torn.length;
+
+        assertTrue(LootLostWriter.recoverActiveSegment(file, RecordFormat.BINARY, gson));
+        assertEquals(intact, file.length());
+        assertEquals(BinaryRecordCodec.HEADER_LENGTH + frames.get(0).length, TimestampIndex.load(file).lastOffset());
+        assertEquals(records.subList(0, 2), read(file, RecordFormat.BINARY));
+    }
+
+    @Test
+    public void zeroFilledBinaryTailIsCutOff() throws IOException
+    {
+        final List<byte[]> frames = RiskedLootLogReaderTest.frames(RiskedLootLogReaderTest.records(2));
+        final File file = binarySegment(frames.get(0), frames.get(1), new byte[64]);
+        final long intact = file.length() - 64;
+
+        assertTrue(LootLostWriter.recoverActiveSegment(file, RecordFormat.BINARY, gson));
+        assertEquals(intact, file.length());
+    }
+
+    @Test
+    public void segmentCutShortInsideTheHeaderIsEmptied() throws IOException
+    {
+        final File file = new File(folder.getRoot(), RecordFormat.BINARY.getFileName());
+        Files.write(file.toPath(), Arrays.copyOf(BinaryRecordCodec.header(), 3));
+
+        assertTrue(LootLostWriter.recoverActiveSegment(file, RecordFormat.BINARY, gson));
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void corruptBinarySegmentIsLeftForCompaction() throws IOException
+    {
+        final List<byte[]> frames = RiskedLootLogReaderTest.frames(RiskedLootLogReaderTest.records(2));
+        final File file = binarySegment(frames.get(0), new byte[]{0x7F, 0, 0, 0, 1, 2, 3, 4}, frames.get(1));
+        final byte[] before = Files.readAllBytes(file.toPath());
+
+        assertFalse(LootLostWriter.recoverActiveSegment(file, RecordFormat.BINARY, gson));
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void olderBinaryVersionIsLeftForCompaction() throws IOException
+    {
+        final File file = binarySegment(RiskedLootLogReaderTest.frames(RiskedLootLogReaderTest.records(1)).get(0));
+        final byte[] contents = Files.readAllBytes(file.toPath());
+        contents[BinaryRecordCodec.HEADER_LENGTH - 1] = 1;
+        Files.write(file.toPath(), contents);
+
+        assertFalse(LootLostWriter.recoverActiveSegment(file, RecordFormat.BINARY, gson));
+    }
+
+    @Test
+    public void jsonLineMissingItsLineSeparatorGetsItBack() throws IOException
+    {
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(2);
+        final String lines = gson.toJson(records.get(0)) + System.lineSeparator() + gson.toJson(records.get(1));
+        final File file = new File(folder.getRoot(), RecordFormat.JSON_LINES.getFileName());
+        Files.write(file.toPath(), lines.getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(LootLostWriter.recoverActiveSegment(file, RecordFormat.JSON_LINES, gson));
+        assertEquals(lines + System.lineSeparator(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(records, read(file, RecordFormat.JSON_LINES));
+    }
+
+    @Test
+    public void tornJsonLineIsCutOff() throws IOException
+    {
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(2);
+        final String complete = gson.toJson(records.get(0)) + System.lineSeparator();
+        final File file = new File(folder.getRoot(), RecordFormat.JSON_LINES.getFileName());
+        Files.write(file.toPath(), (complete + gson.toJson(records.get(1)).substring(0, 30)).getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(LootLostWriter.recoverActiveSegment(file, RecordFormat.JSON_LINES, gson));
+        assertEquals(complete, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    private void assertRecordsStreamInOrderAcrossSegments(final RecordFormat format) throws Exception
+    {
+        final LootLostWriter writer = writer(format);
+        // Every record seals the active segment, the log is spread over many of them
+        writer.setSegmentSize(1);
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(12);
+        add(writer, records);
+
+        assertEquals(records, new ArrayList<>(writer.loadRiskedLootRecords()));
+        assertEquals(records, writer.streamRiskedLootRecords(false).collect(Collectors.toList()));
+        assertEquals(records, writer.streamRiskedLootRecords(true).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void binaryRecordsStreamInOrderAcrossSegments() throws Exception
+    {
+        assertRecordsStreamInOrderAcrossSegments(RecordFormat.BINARY);
+    }
+
+    @Test
+    public void jsonRecordsStreamInOrderAcrossSegments() throws Exception
+    {
+        assertRecordsStreamInOrderAcrossSegments(RecordFormat.JSON_LINES);
+    }
+
+    @Test
+    public void rangeReadReturnsOnlyTheRecordsInRange() throws Exception
+    {
+        final LootLostWriter writer = writer(RecordFormat.BINARY);
+        writer.setSegmentSize(300);
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(40);
+        add(writer, records);
+
+        final List<RiskedLootRecord> range = new ArrayList<>();
+        writer.openRiskedLootRecords(records.get(15).getTimestamp(), records.get(29).getTimestamp()).forEachRemaining(range::add);
+        assertEquals(records.subList(15, 30), range);
+
+        final List<RiskedLootRecord> none = new ArrayList<>();
+        writer.openRiskedLootRecords(new Date(0), new Date(1)).forEachRemaining(none::add);
+        assertTrue(none.isEmpty());
+    }
+
+    @Test
+    public void emptyLogStreamsNothing() throws Exception
+    {
+        final LootLostWriter writer = writer(RecordFormat.BINARY);
+
+        assertTrue(writer.loadRiskedLootRecords().isEmpty());
+        assertEquals(0, writer.streamRiskedLootRecords(true).count());
+    }
+
+    @Test
+    public void newFoldersStoreFramedBinaryRecords() throws Exception
+    {
+        final LootLostWriter writer = new LootLostWriter(folder.newFolder());
+        writers.add(writer);
+        writer.setPlayerUsername("player");
+        add(writer, RiskedLootLogReaderTest.records(1));
+
+        assertEquals(RecordFormat.BINARY, writer.getFormat());
+        assertTrue(new File(writer.getPlayerFolder(), RecordFormat.BINARY.getFileName()).exists());
+    }
+
+    @Test
+    public void foldersStoringJsonLinesKeepTheirFormat() throws Exception
+    {
+        final File root = folder.newFolder();
+        final File player = new File(root, "player");
+        assertTrue(player.mkdir());
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(2);
+        Files.write(new File(player, RecordFormat.JSON_LINES.getFileName()).toPath(),
+            (gson.toJson(records.get(0)) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+
+        final LootLostWriter writer = new LootLostWriter(root);
+        writers.add(writer);
+        writer.setPlayerUsername("player");
+        add(writer, records.subList(1, 2));
+
+        assertEquals(RecordFormat.JSON_LINES, writer.getFormat());
+        assertEquals(records, new ArrayList<>(writer.loadRiskedLootRecords()));
+    }
+
+    private static int deaths(final LootLostWriter writer)
+    {
+        return writer.loadRiskedLootHistory().getRollups().getBuckets(LossRollups.Period.MONTH).stream()
+            .mapToInt(LossRollups.Bucket::getDeaths)
+            .sum();
+    }
+
+    @Test
+    public void deathsAreCountedInTheRollupsAcrossLoads() throws Exception
+    {
+        final File root = folder.newFolder();
+        final LootLostWriter writer = new LootLostWriter(root);
+        writers.add(writer);
+        writer.setPlayerUsername("player");
+        assertTrue(writer.addDeath(1_700_000_000_000L).get(10, TimeUnit.SECONDS));
+        assertTrue(writer.addDeath(1_700_000_060_000L).get(10, TimeUnit.SECONDS));
+        assertEquals(2, deaths(writer));
+        assertEquals(2, writer.loadRiskedLootHistory().getAppendedDeaths());
+
+        // Only the death added since the snapshot is read, the two before come from the snapshot
+        assertTrue(writer.addDeath(1_700_000_120_000L).get(10, TimeUnit.SECONDS));
+        writer.shutDown();
+
+        final LootLostWriter reopened = new LootLostWriter(root);
+        writers.add(reopened);
+        reopened.setPlayerUsername("player");
+        assertEquals(3, deaths(reopened));
+    }
+
+    @Test
+    public void partlyWrittenDeathIsCutOff() throws Exception
+    {
+        final File root = folder.newFolder();
+        final File player = new File(root, "player");
+        assertTrue(player.mkdir());
+        Files.write(new File(player, "deaths.bin").toPath(), new byte[]{0, 0, 1, (byte) 0x8B, (byte) 0xCF, (byte) 0xE5, 0x68, 0, 0, 0, 1});
+
+        final LootLostWriter writer = new LootLostWriter(root);
+        writers.add(writer);
+        writer.setPlayerUsername("player");
+        assertEquals(1, deaths(writer));
+        assertEquals(8, new File(player, "deaths.bin").length());
+
+        assertTrue(writer.addDeath(1_700_000_000_000L).get(10, TimeUnit.SECONDS));
+        assertEquals(2, deaths(writer));
+    }
+
+    /**
+     * Change the snapshot of the player folder as it is written on disk
+     */
+    private static void doctorSnapshot(final File root, final java.util.function.Consumer<JsonObject> change) throws IOException
+    {
+        final File file = new File(new File(root, "player"), "risked_loot.snapshot");
+        final JsonObject snapshot = JsonParser.parseString(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+        change.accept(snapshot);
+        Files.write(file.toPath(), snapshot.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a writer of the given root logged in to the player, with records written to it and its snapshot checkpointed
+     */
+    private LootLostWriter checkpointed(final File root, final List<RiskedLootRecord> records) throws Exception
+    {
+        final LootLostWriter writer = new LootLostWriter(root);
+        writers.add(writer);
+        writer.setPlayerUsername("player");
+        writer.setSegmentSize(600);
+        add(writer, records);
+        writer.shutDown();
+        return writer;
+    }
+
+    private LootLostWriter reopen(final File root)
+    {
+        final LootLostWriter writer = new LootLostWriter(root);
+        writers.add(writer);
+        writer.setPlayerUsername("player");
+        return writer;
+    }
+
+    private static long valueLost(final List<RiskedLootRecord> records)
+    {
+        return records.stream().filter(RiskedLootRecord::isWasLost).mapToLong(RiskedLootRecord::getTotalValue).sum();
+    }
+
+    @Test
+    public void historyIsLoadedFromTheSnapshotAndTheTailAfterIt() throws Exception
+    {
+        final File root = folder.newFolder();
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(30);
+        final RiskedLootHistory before = checkpointed(root, records.subList(0, 20)).loadRiskedLootHistory();
+        // A total only the snapshot holds, so the records it covers were not read again
+        doctorSnapshot(root, snapshot -> snapshot.getAsJsonObject("totals").addProperty("valueLost", 7));
+
+        final LootLostWriter writer = reopen(root);
+        add(writer, records.subList(20, 30));
+        final RiskedLootHistory history = writer.loadRiskedLootHistory();
+
+        assertEquals(7 + valueLost(records.subList(20, 30)), history.getTotals().getValueLost());
+        assertEquals(30, history.getTotals().getRecordCount());
+
+        // Everything else the panel shows came through the snapshot too
+        final RiskedLootHistory expected = before;
+        records.subList(20, 30).forEach(record ->
+        {
+            expected.getAggregates().add(record);
+            expected.getWaves().add(record);
+            expected.getRankings().add(record);
+        });
+        assertEquals(expected.getRankings().getMostValuableLosses(), history.getRankings().getMostValuableLosses());
+        assertEquals(expected.getRankings().getDeepestWaves(), history.getRankings().getDeepestWaves());
+        assertEquals(expected.getAggregates().getItems().stream().map(LossAggregates.ItemTotal::getValue).collect(Collectors.toList()),
+            history.getAggregates().getItems().stream().map(LossAggregates.ItemTotal::getValue).collect(Collectors.toList()));
+        assertEquals(expected.getWaves().getAttempts(5), history.getWaves().getAttempts(5));
+        assertEquals(expected.getWaves().getLosses(29), history.getWaves().getLosses(29));
+    }
+
+    private void assertRebuiltWhen(final java.util.function.Consumer<JsonObject> change) throws Exception
+    {
+        final File root = folder.newFolder();
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(20);
+        checkpointed(root, records);
+        doctorSnapshot(root, snapshot ->
+        {
+            snapshot.getAsJsonObject("totals").addProperty("valueLost", 7);
+            change.accept(snapshot);
+        });
+
+        final RiskedLootHistory history = reopen(root).loadRiskedLootHistory();
+        assertEquals(valueLost(records), history.getTotals().getValueLost());
+        assertEquals(20, history.getTotals().getRecordCount());
+        final List<RiskedLootRecord> mostValuable = records.stream()
+            .filter(RiskedLootRecord::isWasLost)
+            .sorted((a, b) -> Long.compare(b.getTotalValue(), a.getTotalValue()))
+            .limit(history.getRankings().getMostValuableLosses().size())
+            .collect(Collectors.toList());
+        assertEquals(mostValuable, history.getRankings().getMostValuableLosses());
+    }
+
+    @Test
+    public void snapshotOfRewrittenSegmentIsRebuilt() throws Exception
+    {
+        assertRebuiltWhen(snapshot -> snapshot.addProperty("checksum", snapshot.get("checksum").getAsLong() + 1));
+    }
+
+    @Test
+    public void snapshotPastTheEndOfItsSegmentIsRebuilt() throws Exception
+    {
+        assertRebuiltWhen(snapshot -> snapshot.addProperty("offset", 1L << 40));
+    }
+
+    @Test
+    public void snapshotOfMissingSegmentIsRebuilt() throws Exception
+    {
+        assertRebuiltWhen(snapshot -> snapshot.addProperty("segment", 1 << 20));
+    }
+
+    @Test
+    public void snapshotOfAnotherVersionIsRebuilt() throws Exception
+    {
+        assertRebuiltWhen(snapshot -> snapshot.addProperty("version", RiskedLootSnapshot.VERSION - 1));
+    }
+
+    @Test
+    public void snapshotMissingStatisticsIsRebuilt() throws Exception
+    {
+        assertRebuiltWhen(snapshot -> snapshot.remove("waves"));
+    }
+
+    @Test
+    public void snapshotCountingMoreDeathsThanSavedIsRebuilt() throws Exception
+    {
+        assertRebuiltWhen(snapshot -> snapshot.addProperty("deathsOffset", 64));
+    }
+
+    @Test
+    public void deletedSnapshotIsRebuilt() throws Exception
+    {
+        final File root = folder.newFolder();
+        final List<RiskedLootRecord> records = RiskedLootLogReaderTest.records(12);
+        checkpointed(root, records);
+        assertTrue(new File(new File(root, "player"), "risked_loot.snapshot").delete());
+
+        assertEquals(valueLost(records), reopen(root).loadRiskedLootHistory().getTotals().getValueLost());
+        assertTrue(new File(new File(root, "player"), "risked_loot.snapshot").exists());
+    }
+}
@@ -0,0 +1,212 @@
+package com.doomlootlost.localstorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordAppenderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RecordAppender appender = new RecordAppender();
+
+    @After
+    public void stopWriter()
+    {
+        appender.shutDown();
+    }
+
+    private static byte[] data(final int i)
+    {
+        return new byte[]{(byte) i, (byte) (i >> 8), 0x7F};
+    }
+
+    private static boolean await(final CompletableFuture<Boolean> future) throws Exception
+    {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void writesLandInQueueOrderAfterTheHeader() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "risked_loot.bin");
+        final byte[] header = BinaryRecordCodec.header();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(header);
+
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+        {
+            futures.add(appender.append(file, data(i), header));
+            expected.write(data(i));
+        }
+        for (CompletableFuture<Boolean> future : futures)
+        {
+            assertTrue(await(future));
+        }
+
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void indexEntriesPointAtWhereTheDataLanded() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "risked_loot.log");
+        Files.write(file.toPath(), new byte[10]);
+
+        appender.append(file, data(1), null, TimestampIndex.fileFor(file), 100);
+        appender.append(file, data(2));
+        assertTrue(await(appender.append(file, data(3), null, TimestampIndex.fileFor(file), 200)));
+
+        final TimestampIndex index = TimestampIndex.load(file);
+        assertEquals(10, index.seek(101));
+        assertEquals(16, index.lastOffset());
+    }
+
+    @Test
+    public void taskRunsAfterTheWritesQueuedBeforeIt() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "risked_loot.log");
+        final long[] length = new long[1];
+
+        appender.append(file, data(1));
+        appender.append(file, data(2));
+        assertTrue(await(appender.run(() -> length[0] = file.length())));
+
+        assertEquals(6, length[0]);
+    }
+
+    @Test
+    public void failingTaskCompletesFalse() throws Exception
+    {
+        assertFalse(await(appender.run(() ->
+        {
+            throw new IllegalStateException("test");
+        })));
+        assertTrue(await(appender.flush()));
+    }
+
+    @Test
+    public void failedWriteCompletesFalse() throws Exception
+    {
+        final File file = new File(new File(folder.getRoot(), "missing"), "risked_loot.log");
+
+        assertFalse(await(appender.append(file, data(1))));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void writerRestartsAfterShutDown() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "risked_loot.log");
+        assertTrue(await(appender.append(file, data(1))));
+        appender.shutDown();
+
+        assertTrue(await(appender.append(file, data(2))));
+        assertEquals(6, file.length());
+    }
+
+    @Test
+    public void writesQueuedWhileShuttingDownAreNotStranded() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "risked_loot.log");
+        final int threads = 4;
+        final int writes = 200;
+        final List<List<CompletableFuture<Boolean>>> futures = new ArrayList<>();
+        final List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            final List<CompletableFuture<Boolean>> queued = new ArrayList<>();
+            futures.add(queued);
+            writers.add(new Thread(() ->
+            {
+                // Fewer writes than the queue holds, none of them are rejected
+                for (int i = 0; i < writes; i++)
+                {
+                    queued.add(appender.append(file, data(i)));
+                }
+            }));
+        }
+
+        writers.forEach(Thread::start);
+        for (Thread writer : writers)
+        {
+            while (writer.isAlive())
+            {
+                appender.shutDown();
+            }
+            writer.join();
+        }
+
+        for (List<CompletableFuture<Boolean>> queued : futures)
+        {
+            for (CompletableFuture<Boolean> future : queued)
+            {
+                assertTrue(await(future));
+            }
+        }
+        assertEquals((long) threads * writes * data(0).length, file.length());
+    }
+
+    @Test
+    public void fullQueueRejectsWritesWithoutQueueingThem() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "risked_loot.log");
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        appender.run(() ->
+        {
+            blocked.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        final List<CompletableFuture<Boolean>> queued = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> rejected = new ArrayList<>();
+        for (int i = 0; i < RecordAppender.QUEUE_CAPACITY + 76; i++)
+        {
+            final CompletableFuture<Boolean> future = appender.append(file, data(i));
+            (RecordAppender.isRejected(future) ? rejected : queued).add(future);
+        }
+        release.countDown();
+
+        assertEquals(RecordAppender.QUEUE_CAPACITY, queued.size());
+        assertEquals(76, rejected.size());
+        // Every rejection gets a future of its own
+        assertNotSame(rejected.get(0), rejected.get(1));
+        for (CompletableFuture<Boolean> future : queued)
+        {
+            assertTrue(await(future));
+        }
+        assertEquals((long) RecordAppender.QUEUE_CAPACITY * data(0).length, file.length());
+    }
+
+    @Test
+    public void shutDownWithoutWritesIsHarmless()
+    {
+        appender.shutDown();
+        appender.shutDown();
+    }
+}
@@ -0,0 +1,265 @@
+package com.doomlootlost.localstorage;
+
+import com.doomlootlost.data.RiskedLootRecord;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RiskedLootLogReaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = gson(new ItemDictionary());
+
+    /**
+     * @return a Gson binding records the way the writer does
+     */
+    static Gson gson(final ItemDictionary dictionary)
+    {
+        final RecordTimestampAdapter timestampAdapter = new RecordTimestampAdapter();
+        final LTItemEntryAdapter itemAdapter = new LTItemEntryAdapter(dictionary);
+        return new GsonBuilder()
+            .registerTypeAdapter(Date.class, timestampAdapter)
+            .registerTypeAdapter(LTItemEntry.class, itemAdapter)
+            .registerTypeAdapter(RiskedLootRecord.class, new RiskedLootRecordAdapter(timestampAdapter, itemAdapter))
+            .create();
+    }
+
+    static List<RiskedLootRecord> records(final int count)
+    {
+        final List<RiskedLootRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            records.add(new RiskedLootRecord(
+                Arrays.asList(new LTItemEntry("Coins", 995, 1000 + i, 1), new LTItemEntry("Oathplate helm", 30750, 1, 42_000_000L)),
+                new Date(1_700_000_000_000L + i * 60_000L), 1 + i, 42_001_000L + i, i % 2 == 0));
+        }
+        return records;
+    }
+
+    /**
+     * @return the frames of the records, each naming its items only the first time they appear
+     */
+    static List<byte[]> frames(final List<RiskedLootRecord> records)
+    {
+        final Set<Integer> named = new HashSet<>();
+        final List<byte[]> frames = new ArrayList<>();
+        for (RiskedLootRecord record : records)
+        {
+            frames.add(BinaryRecordCodec.encode(record, named));
+        }
+        return frames;
+    }
+
+    static byte[] concat(final byte[]... parts)
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private File write(final String name, final byte[] contents) throws IOException
+    {
+        final File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+
+    private static List<RiskedLootRecord> readAll(final RiskedLootLogReader reader)
+    {
+        final List<RiskedLootRecord> records = new ArrayList<>();
+        reader.forEachRemaining(records::add);
+        return records;
+    }
+
+    @Test
+    public void binaryLogRoundTrips() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final List<byte[]> frames = frames(records);
+        final File file = write("risked_loot.bin", concat(BinaryRecordCodec.header(), frames.get(0), frames.get(1), frames.get(2)));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.map(file, RecordFormat.BINARY, gson);
+        assertEquals(records, readAll(reader));
+        assertEquals(-1, reader.getTornOffset());
+        assertEquals(-1, reader.getCorruptOffset());
+        assertEquals(file.length(), reader.getPosition());
+    }
+
+    @Test
+    public void truncatedFrameEndsReadingAsTorn() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final List<byte[]> frames = frames(records);
+        final byte[] log = concat(BinaryRecordCodec.header(), frames.get(0), frames.get(1), frames.get(2));
+        final long tornOffset = log.length - frames.get(2).length;
+
+        for (int cut = 1; cut < frames.get(2).length; cut++)
+        {
+            final File file = write("risked_loot.bin", Arrays.copyOf(log, log.length - cut));
+            final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.BINARY, gson);
+
+            assertEquals(records.subList(0, 2), readAll(reader));
+            assertEquals(tornOffset, reader.getTornOffset());
+            assertEquals(-1, reader.getCorruptOffset());
+        }
+    }
+
+    @Test
+    public void frameFailingItsChecksumIsSkipped() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final List<byte[]> frames = frames(records);
+        final byte[] corrupt = frames.get(1).clone();
+        corrupt[corrupt.length - 1] ^= 0x40;
+        final File file = write("risked_loot.bin", concat(BinaryRecordCodec.header(), frames.get(0), corrupt, frames.get(2)));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.BINARY, gson);
+        assertEquals(Arrays.asList(records.get(0), records.get(2)), readAll(reader));
+        assertEquals(-1, reader.getTornOffset());
+        assertEquals(-1, reader.getCorruptOffset());
+    }
+
+    @Test
+    public void zeroFilledTailIsTorn() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(2);
+        final List<byte[]> frames = frames(records);
+        final byte[] log = concat(BinaryRecordCodec.header(), frames.get(0), frames.get(1));
+        final File file = write("risked_loot.bin", concat(log, new byte[100]));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.BINARY, gson);
+        assertEquals(records, readAll(reader));
+        assertEquals(log.length, reader.getTornOffset());
+        assertEquals(-1, reader.getCorruptOffset());
+    }
+
+    @Test
+    public void invalidFrameLengthStopsReadingAsCorrupt() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(2);
+        final List<byte[]> frames = frames(records);
+        final byte[] log = concat(BinaryRecordCodec.header(), frames.get(0));
+        final File file = write("risked_loot.bin", concat(log, new byte[]{0x7F, 0, 0, 0, 1, 2, 3, 4}, frames.get(1)));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.BINARY, gson);
+        assertEquals(records.subList(0, 1), readAll(reader));
+        assertEquals(log.length, reader.getCorruptOffset());
+        assertEquals(-1, reader.getTornOffset());
+    }
+
+    @Test
+    public void version1LogsAreReadWithoutFrames() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final byte[] header = BinaryRecordCodec.header();
+        header[BinaryRecordCodec.HEADER_LENGTH - 1] = 1;
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        log.write(header, 0, header.length);
+        for (byte[] frame : frames(records))
+        {
+            // Version 1 wrote the payload alone
+            log.write(frame, Integer.BYTES * 2, frame.length - Integer.BYTES * 2);
+        }
+        final byte[] complete = log.toByteArray();
+
+        RiskedLootLogReader reader = RiskedLootLogReader.read(write("risked_loot.bin", complete), RecordFormat.BINARY, gson);
+        assertEquals(1, reader.getVersion());
+        assertEquals(records, readAll(reader));
+
+        reader = RiskedLootLogReader.read(write("risked_loot.bin", Arrays.copyOf(complete, complete.length - 2)), RecordFormat.BINARY, gson);
+        assertEquals(records.subList(0, 2), readAll(reader));
+        assertTrue(reader.getTornOffset() > 0);
+    }
+
+    @Test
+    public void missingNameEntryReadsAsUnknownItem() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(2);
+        final List<byte[]> frames = frames(records);
+        // The second frame relies on names defined by the first
+        final File file = write("risked_loot.bin", concat(BinaryRecordCodec.header(), frames.get(1)));
+
+        final List<RiskedLootRecord> read = readAll(RiskedLootLogReader.read(file, RecordFormat.BINARY, gson));
+        assertEquals(1, read.size());
+        assertEquals(ItemDictionary.unknownName(995), read.get(0).getItems().get(0).getName());
+        assertTrue(read.get(0).isValid());
+    }
+
+    private byte[] jsonLines(final List<RiskedLootRecord> records)
+    {
+        final StringBuilder lines = new StringBuilder();
+        for (RiskedLootRecord record : records)
+        {
+            lines.append(gson.toJson(record)).append('\n');
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void jsonLogRoundTrips() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final RiskedLootLogReader reader = RiskedLootLogReader.map(write("risked_loot.log", jsonLines(records)), RecordFormat.JSON_LINES, gson);
+
+        assertEquals(records, readAll(reader));
+        assertEquals(-1, reader.getTornOffset());
+    }
+
+    @Test
+    public void lastJsonLineMissingItsLineSeparatorIsRead() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final byte[] lines = jsonLines(records);
+        final File file = write("risked_loot.log", Arrays.copyOf(lines, lines.length - 1));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.JSON_LINES, gson);
+        assertEquals(records, readAll(reader));
+        assertEquals(-1, reader.getTornOffset());
+    }
+
+    @Test
+    public void partiallyWrittenJsonLineIsTorn() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(3);
+        final byte[] complete = jsonLines(records.subList(0, 2));
+        final byte[] lines = jsonLines(records);
+        final File file = write("risked_loot.log", Arrays.copyOf(lines, complete.length + 20));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.JSON_LINES, gson);
+        assertEquals(records.subList(0, 2), readAll(reader));
+        assertEquals(complete.length, reader.getTornOffset());
+    }
+
+    @Test
+    public void unreadableJsonLineIsSkipped() throws IOException
+    {
+        final List<RiskedLootRecord> records = records(2);
+        final byte[] first = jsonLines(records.subList(0, 1));
+        final byte[] second = jsonLines(records.subList(1, 2));
+        final File file = write("risked_loot.log", concat(first, "{\"items\":[{\"id\":\r\n\n".getBytes(StandardCharsets.UTF_8), second));
+
+        final RiskedLootLogReader reader = RiskedLootLogReader.read(file, RecordFormat.JSON_LINES, gson);
+        assertEquals(records, readAll(reader));
+        assertEquals(-1, reader.getTornOffset());
+    }
+}
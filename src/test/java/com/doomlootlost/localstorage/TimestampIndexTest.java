@@ -0,0 +1,122 @@
+package com.doomlootlost.localstorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TimestampIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write an index beside a segment from (timestamp, offset) pairs
+     */
+    private File segmentWithIndex(final long... entries) throws IOException
+    {
+        final File segment = folder.newFile("risked_loot.log");
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        for (int i = 0; i < entries.length; i += 2)
+        {
+            index.write(TimestampIndex.entry(entries[i], entries[i + 1]));
+        }
+        Files.write(TimestampIndex.fileFor(segment).toPath(), index.toByteArray());
+        return segment;
+    }
+
+    @Test
+    public void missingIndexLoadsAsNull() throws IOException
+    {
+        assertNull(TimestampIndex.load(folder.newFile("risked_loot.bin")));
+    }
+
+    @Test
+    public void seekFindsTheLastEntryOlderThanTheTimestamp() throws IOException
+    {
+        final TimestampIndex index = TimestampIndex.load(segmentWithIndex(100, 0, 200, 5000, 300, 9000, 400, 20000));
+
+        assertEquals(0, index.seek(50));
+        assertEquals(0, index.seek(100));
+        assertEquals(0, index.seek(150));
+        // A record at exactly the timestamp may come after other records with it, start before them
+        assertEquals(0, index.seek(200));
+        assertEquals(5000, index.seek(201));
+        assertEquals(9000, index.seek(400));
+        assertEquals(20000, index.seek(Long.MAX_VALUE));
+        assertEquals(100, index.firstTimestamp());
+        assertEquals(20000, index.lastOffset());
+    }
+
+    @Test
+    public void seekStartsBeforeEveryEntryWithTheSameTimestamp() throws IOException
+    {
+        final TimestampIndex index = TimestampIndex.load(segmentWithIndex(100, 0, 200, 10, 200, 20, 200, 30, 300, 40));
+
+        assertEquals(0, index.seek(200));
+        assertEquals(30, index.seek(250));
+    }
+
+    @Test
+    public void emptyIndexSeeksToTheStart() throws IOException
+    {
+        final TimestampIndex index = TimestampIndex.load(segmentWithIndex());
+
+        assertTrue(index.isEmpty());
+        assertEquals(0, index.seek(100));
+        assertEquals(Long.MAX_VALUE, index.firstTimestamp());
+        assertEquals(-1, index.lastOffset());
+    }
+
+    @Test
+    public void tornLastEntryIsIgnored() throws IOException
+    {
+        final File segment = segmentWithIndex(100, 0, 200, 5000);
+        final File indexFile = TimestampIndex.fileFor(segment);
+        final byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        Files.write(indexFile.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertEquals(0, TimestampIndex.load(segment).lastOffset());
+    }
+
+    @Test
+    public void truncateDropsEntriesPastTheEndOfTheSegment() throws IOException
+    {
+        final File segment = segmentWithIndex(100, 0, 200, 5000, 300, 9000);
+
+        TimestampIndex.truncate(segment, 9000);
+        assertEquals(5000, TimestampIndex.load(segment).lastOffset());
+        assertEquals(TimestampIndex.ENTRY_SIZE * 2, TimestampIndex.fileFor(segment).length());
+
+        TimestampIndex.truncate(segment, 0);
+        assertTrue(TimestampIndex.load(segment).isEmpty());
+    }
+
+    @Test
+    public void truncateDropsATornLastEntry() throws IOException
+    {
+        final File segment = segmentWithIndex(100, 0, 200, 5000);
+        final File indexFile = TimestampIndex.fileFor(segment);
+        final byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        Files.write(indexFile.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        TimestampIndex.truncate(segment, Long.MAX_VALUE);
+        assertEquals(TimestampIndex.ENTRY_SIZE, indexFile.length());
+    }
+
+    @Test
+    public void truncateWithoutAnIndexDoesNothing() throws IOException
+    {
+        final File segment = folder.newFile("risked_loot.bin");
+        TimestampIndex.truncate(segment, 0);
+
+        assertNull(TimestampIndex.load(segment));
+    }
+}